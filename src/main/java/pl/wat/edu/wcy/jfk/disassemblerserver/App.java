@@ -1,19 +1,43 @@
 package pl.wat.edu.wcy.jfk.disassemblerserver;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.InstructionPatternParser;
+import org.springframework.context.annotation.Bean;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.InstructionTableSnapshot;
 import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.MachineCodeInterpreter;
 
+import java.util.concurrent.ForkJoinPool;
+
 @SpringBootApplication
 public class App {
     public static MachineCodeInterpreter machineCodeInterpreter;
 
     public static void main(String[] args) {
-        String i386path = "i386.pdf";
-        InstructionPatternParser instructionPatternParser = new InstructionPatternParser(i386path);
-        machineCodeInterpreter = new MachineCodeInterpreter(instructionPatternParser.getOneByteInstructions(), instructionPatternParser.getTwoByteInstructions());
+        machineCodeInterpreter = InstructionTableSnapshot.createInterpreter("i386.pdf");
 
         SpringApplication.run(App.class, args);
     }
+
+    @Autowired
+    public void configureRenderCache(@Value("${disassembler.render-cache-size:65536}") int renderCacheSize) {
+        if (machineCodeInterpreter != null) {
+            machineCodeInterpreter.useRenderCache(renderCacheSize);
+        }
+    }
+
+    // Large sections are split into chunks for the whole pool unless limited, 0 uses pool size
+    @Autowired
+    public void configureSectionChunks(@Value("${disassembler.max-section-chunks:0}") int maxSectionChunks, @Value("${disassembler.pool-size:0}") int poolSize) {
+        if (machineCodeInterpreter != null) {
+            machineCodeInterpreter.useSectionChunks(maxSectionChunks > 0 ? maxSectionChunks : poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    // Pool shared by all requests for decoding sections, pool size 0 uses number of processors
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool disassemblerPool(@Value("${disassembler.pool-size:0}") int poolSize) {
+        return new ForkJoinPool(poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors());
+    }
 }
@@ -0,0 +1,188 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.controllers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import pl.wat.edu.wcy.jfk.disassemblerserver.App;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.*;
+import pl.wat.edu.wcy.jfk.disassemblerserver.store.BinaryStore;
+import pl.wat.edu.wcy.jfk.disassemblerserver.store.StoredBinary;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+@RestController
+@CrossOrigin
+public class BinaryController {
+    private static final Logger logger = LoggerFactory.getLogger(BinaryController.class);
+
+    @Autowired
+    private BinaryStore binaryStore;
+
+    @Autowired
+    private ForkJoinPool disassemblerPool;
+
+    private int checkpointInterval;
+
+    @Value("${disassembler.max-signature-matches:10000}")
+    private int maxSignatureMatches;
+
+    // Rejected at startup, range decoding divides offsets by the interval
+    @Autowired
+    public void configureCheckpointInterval(@Value("${disassembler.checkpoint-interval:256}") int checkpointInterval) {
+        if (checkpointInterval <= 0) {
+            throw new IllegalArgumentException("disassembler.checkpoint-interval must be positive: " + checkpointInterval);
+        }
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    // Stores binary and finds its functions, binary is later referenced by returned id
+    @PostMapping("/binaries")
+    public StoredBinary uploadBinary(@RequestParam("file") MultipartFile file) {
+        StoredBinary storedBinary = null;
+
+        if (file == null) {
+            logger.warn("File not found");
+            return storedBinary;
+        }
+
+        try (MappedUpload upload = new MappedUpload(file::transferTo)) {
+            // Upload is parsed and hashed in place, stored binary keeps code sections sliced from the mapping
+            PEFile peFile = new PEFile(upload.getBuffer());
+
+            if (!peFile.isPE()) {
+                logger.warn(file.getOriginalFilename() + " is not a PE file");
+                return storedBinary;
+            }
+
+            String id = upload.digest();
+            storedBinary = binaryStore.get(id);
+            if (storedBinary != null) {
+                return storedBinary;
+            }
+            logger.info(file.getOriginalFilename() + " successfully uploaded as " + id);
+
+            // Code reachable from entry point and prologues is decoded once for function table and cross-references
+            int[] roots = FunctionTable.findRoots(App.machineCodeInterpreter, peFile.getMachineCode(), peFile.getCodeTables(), peFile.getImageBase(), peFile.getAddressOfEntryPoint());
+            RecursiveTraversal recursiveTraversal = new RecursiveTraversal(App.machineCodeInterpreter, peFile.getMachineCode(), peFile.getCodeTables(), peFile.getImageBase());
+            List<DecodedSection> decodedSections = recursiveTraversal.traverse(roots, disassemblerPool, App.machineCodeInterpreter.getMaxSectionChunks());
+
+            FunctionTable functionTable = FunctionTable.build(roots, decodedSections, peFile.getCodeTables(), peFile.getImageBase());
+            CrossReferenceIndex crossReferenceIndex = CrossReferenceIndex.build(decodedSections);
+            CheckpointIndex checkpointIndex = new CheckpointIndex(App.machineCodeInterpreter, peFile.getMachineCode(), peFile.getCodeTables(), peFile.getImageBase(), checkpointInterval);
+
+            storedBinary = new StoredBinary(id, peFile.getImageBase(), peFile.getAddressOfEntryPoint(), peFile.getMachineCode(), peFile.getCodeTables(), functionTable, crossReferenceIndex, checkpointIndex, peFile.getImportTable());
+            binaryStore.put(storedBinary);
+
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+        }
+
+        return storedBinary;
+    }
+
+    @GetMapping("/binaries/{id}/functions")
+    public int[] getFunctions(@PathVariable("id") String id) {
+        StoredBinary storedBinary = binaryStore.get(id);
+        if (storedBinary == null) {
+            logger.warn("Binary " + id + " not found");
+            return null;
+        }
+
+        return storedBinary.getFunctionTable().getStarts();
+    }
+
+    // Addresses of instructions calling or jumping to hex address
+    @GetMapping("/binaries/{id}/xrefs/{address}")
+    public int[] getCrossReferences(@PathVariable("id") String id, @PathVariable("address") String address) {
+        StoredBinary storedBinary = binaryStore.get(id);
+        if (storedBinary == null) {
+            logger.warn("Binary " + id + " not found");
+            return null;
+        }
+
+        Integer target = parseAddress(address);
+        if (target == null) {
+            return null;
+        }
+
+        return storedBinary.getCrossReferenceIndex().getReferences(target);
+    }
+
+    // Instructions of function starting at hex address, without functions it calls
+    @GetMapping("/binaries/{id}/functions/{address}")
+    public List<InterpretedInstruction> disassembleFunction(@PathVariable("id") String id, @PathVariable("address") String address) {
+        StoredBinary storedBinary = binaryStore.get(id);
+        if (storedBinary == null) {
+            logger.warn("Binary " + id + " not found");
+            return null;
+        }
+
+        Integer start = parseAddress(address);
+        if (start == null) {
+            return null;
+        }
+
+        RecursiveTraversal recursiveTraversal = new RecursiveTraversal(App.machineCodeInterpreter, storedBinary.getMachineCode(), storedBinary.getCodeTables(), storedBinary.getImageBase(), false);
+
+        List<InterpretedInstruction> interpretedInstructions = new ArrayList<>();
+        for (DecodedSection decodedSection : recursiveTraversal.traverse(new int[]{start}, null, 1)) {
+            interpretedInstructions.addAll(decodedSection);
+        }
+
+        return interpretedInstructions;
+    }
+
+    // Linear sweep instructions overlapping length bytes from hex address, annotate adds names of imported functions
+    @GetMapping("/binaries/{id}/range")
+    public List<InterpretedInstruction> disassembleRange(@PathVariable("id") String id, @RequestParam("va") String va, @RequestParam("length") int length,
+                                                         @RequestParam(value = "annotate", defaultValue = "false") boolean annotate) {
+        StoredBinary storedBinary = binaryStore.get(id);
+        if (storedBinary == null) {
+            logger.warn("Binary " + id + " not found");
+            return null;
+        }
+
+        Integer start = parseAddress(va);
+        if (start == null) {
+            return null;
+        }
+
+        return storedBinary.getCheckpointIndex().decode(start, length, annotate ? storedBinary.getImportTable() : null);
+    }
+
+    // Addresses of hex byte signatures with ?? wildcards, such as "55 8B EC ?? 83", in code sections
+    @PostMapping("/binaries/{id}/signatures")
+    public List<SignatureScanner.Match> findSignatures(@PathVariable("id") String id, @RequestBody List<String> signatures) {
+        StoredBinary storedBinary = binaryStore.get(id);
+        if (storedBinary == null) {
+            logger.warn("Binary " + id + " not found");
+            return null;
+        }
+
+        SignatureScanner signatureScanner;
+        try {
+            signatureScanner = SignatureScanner.compile(signatures);
+        } catch (IllegalArgumentException e) {
+            logger.warn(e.getMessage());
+            return null;
+        }
+
+        return signatureScanner.scan(storedBinary.getMachineCode(), storedBinary.getCodeTables(), storedBinary.getImageBase(), maxSignatureMatches);
+    }
+
+    // Hex address from request, null when it isn't valid
+    private static Integer parseAddress(String address) {
+        try {
+            return Integer.parseUnsignedInt(address, 16);
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid address " + address);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.controllers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import pl.wat.edu.wcy.jfk.disassemblerserver.App;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.RenderCache;
+
+@RestController
+@CrossOrigin
+public class CacheController {
+    private static final Logger logger = LoggerFactory.getLogger(CacheController.class);
+
+    // Hits and misses of rendered instruction cache since startup
+    @GetMapping("/cache/render")
+    public RenderCache.Statistics renderCacheStatistics() {
+        RenderCache renderCache = App.machineCodeInterpreter.getRenderCache();
+
+        if (renderCache == null) {
+            logger.warn("Render cache is disabled");
+            return null;
+        }
+
+        return renderCache.getStatistics();
+    }
+}
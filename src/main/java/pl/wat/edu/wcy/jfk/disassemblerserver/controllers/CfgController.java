@@ -0,0 +1,70 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.controllers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import pl.wat.edu.wcy.jfk.disassemblerserver.App;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.ControlFlowGraph;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.DecodedSection;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.PEFile;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.RecursiveTraversal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+@RestController
+@CrossOrigin
+public class CfgController {
+    private static final Logger logger = LoggerFactory.getLogger(CfgController.class);
+
+    @Autowired
+    private ForkJoinPool disassemblerPool;
+
+    @Value("${disassembler.max-parallel-sections:4}")
+    private int maxParallelSections;
+
+    // Control flow graph of every code section
+    @PostMapping("/cfg")
+    public List<ControlFlowGraph> buildCfg(@RequestParam("file") MultipartFile file, @RequestParam(value = "mode", defaultValue = "linear") String mode) {
+
+        List<ControlFlowGraph> controlFlowGraphs = null;
+
+        if (file == null) {
+            logger.warn("File not found");
+            return controlFlowGraphs;
+        }
+
+        try {
+            PEFile peFile = new PEFile(file.getInputStream());
+
+            if (!peFile.isPE()) {
+                logger.warn(file.getOriginalFilename() + " is not a PE file");
+                return controlFlowGraphs;
+            }
+            logger.info(file.getOriginalFilename() + " successfully uploaded!");
+
+            List<DecodedSection> decodedSections;
+            if (mode.equals("recursive")) {
+                RecursiveTraversal recursiveTraversal = new RecursiveTraversal(App.machineCodeInterpreter, peFile.getMachineCode(), peFile.getCodeTables(), peFile.getImageBase());
+                decodedSections = recursiveTraversal.traverse(new int[]{peFile.getAddressOfEntryPoint()}, disassemblerPool, App.machineCodeInterpreter.getMaxSectionChunks());
+            } else {
+                decodedSections = App.machineCodeInterpreter.decode(peFile.getMachineCode(), peFile.getCodeTables(), peFile.getImageBase(), disassemblerPool, maxParallelSections);
+            }
+
+            controlFlowGraphs = new ArrayList<>();
+            for (DecodedSection decodedSection : decodedSections) {
+                controlFlowGraphs.add(ControlFlowGraph.build(decodedSection));
+            }
+
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+        }
+
+        return controlFlowGraphs;
+    }
+}
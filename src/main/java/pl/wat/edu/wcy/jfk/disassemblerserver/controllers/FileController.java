@@ -2,22 +2,47 @@ package pl.wat.edu.wcy.jfk.disassemblerserver.controllers;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import pl.wat.edu.wcy.jfk.disassemblerserver.App;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.DecodedSection;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.ImportTable;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.IngestPipeline;
 import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.InterpretedInstruction;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.ListingWriter;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.MappedUpload;
 import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.PEFile;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.RecursiveTraversal;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 @RestController
 @CrossOrigin
 public class FileController {
     private static final Logger logger = LoggerFactory.getLogger(FileController.class);
 
+    @Autowired
+    private ForkJoinPool disassemblerPool;
+
+    @Value("${disassembler.max-parallel-sections:4}")
+    private int maxParallelSections;
+
+    // Annotate adds names of imported functions to calls and jumps through import address table
     @PostMapping("/file")
-    public List<List<InterpretedInstruction>> disassembleFile(@RequestParam("file") MultipartFile file) {
+    public List<List<InterpretedInstruction>> disassembleFile(@RequestParam("file") MultipartFile file, @RequestParam(value = "mode", defaultValue = "linear") String mode,
+                                                              @RequestParam(value = "annotate", defaultValue = "false") boolean annotate) {
 
         List<List<InterpretedInstruction>> interpretedInstructions = null;
 
@@ -26,8 +51,12 @@ public class FileController {
             return interpretedInstructions;
         }
 
-        try {
-            PEFile peFile = new PEFile(file.getInputStream());
+        try (MappedUpload upload = new MappedUpload(file::transferTo)) {
+            if (!mode.equals("recursive")) {
+                return disassemble(ingestPipeline().ingest(upload), file.getOriginalFilename(), annotate);
+            }
+
+            PEFile peFile = new PEFile(upload.getBuffer());
 
             if (!peFile.isPE()) {
                 logger.warn(file.getOriginalFilename() + " is not a PE file");
@@ -35,7 +64,12 @@ public class FileController {
             }
             logger.info(file.getOriginalFilename() + " successfully uploaded!");
 
-            interpretedInstructions = App.machineCodeInterpreter.interpret(peFile.getMachineCode(), peFile.getCodeTables(), peFile.getImageBase());
+            RecursiveTraversal recursiveTraversal = new RecursiveTraversal(App.machineCodeInterpreter, peFile.getMachineCode(), peFile.getCodeTables(), peFile.getImageBase());
+            List<DecodedSection> decodedSections = recursiveTraversal.traverse(new int[]{peFile.getAddressOfEntryPoint()}, disassemblerPool, App.machineCodeInterpreter.getMaxSectionChunks());
+            if (annotate) {
+                annotate(decodedSections, peFile.getImportTable());
+            }
+            interpretedInstructions = new ArrayList<>(decodedSections);
             interpretedInstructions.get(0).add(0, new InterpretedInstruction(peFile.getAddressOfEntryPoint(), "", "", "", "", ""));
 
         } catch (IOException e) {
@@ -44,4 +78,75 @@ public class FileController {
 
         return interpretedInstructions;
     }
+
+    // File sent as request body, code sections are decoded while rest of the body is still arriving
+    @PostMapping(value = "/file", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public List<List<InterpretedInstruction>> disassembleBody(HttpServletRequest request, @RequestParam(value = "annotate", defaultValue = "false") boolean annotate) {
+        try {
+            return disassemble(ingestPipeline().ingest(request.getInputStream()), "Request body", annotate);
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+        }
+
+        return null;
+    }
+
+    private IngestPipeline ingestPipeline() {
+        return new IngestPipeline(App.machineCodeInterpreter, disassemblerPool, maxParallelSections);
+    }
+
+    // Linear sweep of sections decoded by ingest pipeline
+    private List<List<InterpretedInstruction>> disassemble(IngestPipeline.Result ingested, String name, boolean annotate) {
+        PEFile peFile = ingested.getPeFile();
+
+        if (!peFile.isPE()) {
+            logger.warn(name + " is not a PE file");
+            return null;
+        }
+        logger.info(name + " successfully uploaded as " + ingested.getId());
+
+        if (annotate) {
+            annotate(ingested.getDecodedSections(), peFile.getImportTable());
+        }
+
+        List<List<InterpretedInstruction>> interpretedInstructions = new ArrayList<>(ingested.getDecodedSections());
+        interpretedInstructions.get(0).add(0, new InterpretedInstruction(peFile.getAddressOfEntryPoint(), "", "", "", "", ""));
+
+        return interpretedInstructions;
+    }
+
+    private static void annotate(List<DecodedSection> decodedSections, ImportTable importTable) {
+        for (DecodedSection decodedSection : decodedSections) {
+            decodedSection.setImportTable(importTable);
+        }
+    }
+
+    // Text listing written while sections are decoded, instructions aren't kept in memory
+    @PostMapping(value = "/file/listing", produces = MediaType.TEXT_PLAIN_VALUE)
+    public StreamingResponseBody listFile(@RequestParam("file") MultipartFile file) {
+        if (file == null) {
+            logger.warn("File not found");
+            return null;
+        }
+
+        try {
+            PEFile peFile = new PEFile(file.getInputStream());
+
+            if (!peFile.isPE()) {
+                logger.warn(file.getOriginalFilename() + " is not a PE file");
+                return null;
+            }
+            logger.info(file.getOriginalFilename() + " successfully uploaded!");
+
+            return outputStream -> {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+                App.machineCodeInterpreter.interpret(peFile.getMachineCode(), peFile.getCodeTables(), peFile.getImageBase(), new ListingWriter(writer));
+                writer.flush();
+            };
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+        }
+
+        return null;
+    }
 }
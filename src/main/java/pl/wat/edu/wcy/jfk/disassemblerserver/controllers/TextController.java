@@ -1,6 +1,5 @@
 package pl.wat.edu.wcy.jfk.disassemblerserver.controllers;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -12,8 +11,6 @@ import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.InterpretedInstruction
 import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.PEFile;
 
 import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 @RestController
@@ -46,13 +43,10 @@ public class TextController {
 
         HexBinaryAdapter hexBinaryAdapter = new HexBinaryAdapter();
         byte[] machineCode = hexBinaryAdapter.unmarshal(text);
-        List<List<Byte>> lists = new ArrayList<>();
-        List<Byte> bytes = Arrays.asList(ArrayUtils.toObject(machineCode));
-        lists.add(bytes);
 
         PEFile peFile = new PEFile(machineCode);
 
-        interpretedInstructions = App.machineCodeInterpreter.interpret(lists, peFile.getCodeTables(), 0);
+        interpretedInstructions = App.machineCodeInterpreter.interpret(machineCode, peFile.getCodeTables(), 0);
         interpretedInstructions.get(0).add(0, new InterpretedInstruction(0, "", "", "", "", ""));
 
         return interpretedInstructions;
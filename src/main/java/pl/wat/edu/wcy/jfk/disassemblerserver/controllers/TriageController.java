@@ -0,0 +1,69 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.controllers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.PEFile;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.TriageReport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@CrossOrigin
+public class TriageController {
+    private static final Logger logger = LoggerFactory.getLogger(TriageController.class);
+
+    // Header facts of uploaded file, sections aren't read or decoded
+    @PostMapping("/triage")
+    public TriageReport triageFile(@RequestParam("file") MultipartFile file) {
+        if (file == null) {
+            logger.warn("File not found");
+            return null;
+        }
+
+        try {
+            return triage(file);
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+        }
+
+        return null;
+    }
+
+    // Reports in order of uploaded files, null for file which couldn't be read
+    @PostMapping("/triage/batch")
+    public List<TriageReport> triageFiles(@RequestParam("files") List<MultipartFile> files) {
+        List<TriageReport> reports = new ArrayList<>(files.size());
+
+        for (MultipartFile file : files) {
+            try {
+                reports.add(triage(file));
+            } catch (IOException e) {
+                logger.error(file.getOriginalFilename() + ": " + e.getMessage());
+                reports.add(null);
+            }
+        }
+        logger.info(files.size() + " files triaged");
+
+        return reports;
+    }
+
+    // Headers pointing outside of themselves are reported as not PE file
+    private static TriageReport triage(MultipartFile file) throws IOException {
+        PEFile peFile;
+        try {
+            peFile = PEFile.readHeaders(file.getInputStream());
+        } catch (IndexOutOfBoundsException e) {
+            logger.warn(file.getOriginalFilename() + " has malformed headers");
+            return TriageReport.of(file.getOriginalFilename(), null);
+        }
+
+        return TriageReport.of(file.getOriginalFilename(), peFile);
+    }
+}
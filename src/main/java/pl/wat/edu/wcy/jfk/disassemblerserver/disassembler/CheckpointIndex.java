@@ -0,0 +1,101 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Known instruction boundaries of linear sweep, one for every interval bytes of each code section.
+ * <p>
+ * Any address range can be decoded by starting linear sweep from the nearest boundary before it,
+ * instead of from the beginning of section.
+ */
+public class CheckpointIndex {
+    private final MachineCodeInterpreter interpreter;
+    private final List<ByteBuffer> machineCode;
+    private final List<PEFile.Code.SectionTable> codeTables;
+    private final int imageBase;
+    private final int interval;
+
+    // checkpoints[section][k] is the first instruction starting at or after k * interval, -1 when there is none
+    private final int[][] checkpoints;
+
+    /**
+     * @throws IllegalArgumentException when interval isn't positive
+     */
+    public CheckpointIndex(MachineCodeInterpreter interpreter, List<ByteBuffer> machineCode, List<PEFile.Code.SectionTable> codeTables, int imageBase, int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive: " + interval);
+        }
+
+        this.interpreter = interpreter;
+        this.machineCode = machineCode;
+        this.codeTables = codeTables;
+        this.imageBase = imageBase;
+        this.interval = interval;
+
+        checkpoints = new int[machineCode.size()][];
+        for (int l = 0; l < machineCode.size(); ++l) {
+            checkpoints[l] = checkpoints(interpreter.scan(machineCode.get(l), codeTables.get(l)), codeTables.get(l).getMisc());
+        }
+    }
+
+    /**
+     * @return instructions of linear sweep overlapping [address, address + length), empty list when address
+     * is outside code sections
+     */
+    public List<InterpretedInstruction> decode(int address, int length) {
+        return decode(address, length, null);
+    }
+
+    /**
+     * @param importTable imports annotating calls and jumps through import address table, null for no annotations
+     */
+    public List<InterpretedInstruction> decode(int address, int length, ImportTable importTable) {
+        for (int l = 0; l < machineCode.size(); ++l) {
+            PEFile.Code.SectionTable codeTable = codeTables.get(l);
+            int offset = address - imageBase - codeTable.getVirtualAdress();
+            if (offset < 0 || offset >= codeTable.getMisc()) continue;
+
+            int start = 0;
+            for (int k = offset / interval; k >= 0; --k) {
+                int checkpoint = checkpoints[l][k];
+                if (checkpoint >= 0 && checkpoint <= offset) {
+                    start = checkpoint;
+                    break;
+                }
+            }
+
+            int end = (int) Math.min((long) offset + Math.max(length, 1), codeTable.getMisc());
+            DecodedSection section = interpreter.decode(machineCode.get(l), codeTable, imageBase, start, end);
+            section.setImportTable(importTable);
+
+            // Skip instructions between checkpoint and range
+            int first = 0;
+            while (first < section.getInstructionCount() && section.getAddress(first) + section.getLength(first) <= address) {
+                ++first;
+            }
+
+            return section.subList(first, section.size());
+        }
+
+        return Collections.emptyList();
+    }
+
+    // First boundary at or after every multiple of interval
+    private int[] checkpoints(InstructionBoundaries boundaries, int size) {
+        int[] sectionCheckpoints = new int[Math.max(size, 0) / interval + 1];
+        Arrays.fill(sectionCheckpoints, -1);
+
+        int k = 0;
+        for (int i = 0; i < boundaries.size() && k < sectionCheckpoints.length; ++i) {
+            int offset = boundaries.getOffset(i);
+            while (k < sectionCheckpoints.length && k * interval <= offset) {
+                sectionCheckpoints[k++] = offset;
+            }
+        }
+
+        return sectionCheckpoints;
+    }
+}
@@ -0,0 +1,142 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Basic blocks of decoded section and edges between them.
+ * <p>
+ * Block starts at first instruction, branch target or instruction following a jump, branch or return.
+ * Edges are kept in compressed rows: successors of block i are edgeTargets[edgeOffsets[i]..edgeOffsets[i + 1]),
+ * given as block indexes, with type of every edge in edgeTypes.
+ */
+@Getter
+public class ControlFlowGraph {
+    public static final byte EDGE_FALLTHROUGH = 0;
+    public static final byte EDGE_JUMP = 1;
+
+    // Address, size in bytes and number of instructions of every block
+    private int[] blockAddresses;
+    private int[] blockSizes;
+    private int[] instructionCounts;
+
+    private int[] edgeOffsets;
+    private int[] edgeTargets;
+    private byte[] edgeTypes;
+
+    private ControlFlowGraph() {
+    }
+
+    /**
+     * @param section instructions sorted by address
+     */
+    public static ControlFlowGraph build(DecodedSection section) {
+        int count = section.getInstructionCount();
+
+        int[] targets = new int[count];
+        boolean[] leaders = new boolean[count + 1];
+        leaders[0] = true;
+        leaders[count] = true;
+
+        for (int i = 0; i < count; ++i) {
+            int flow = section.getFlow(i);
+            targets[i] = MachineCodeInterpreter.NO_TARGET;
+
+            if (flow == OpcodeTable.FLOW_JUMP || flow == OpcodeTable.FLOW_BRANCH) {
+                targets[i] = section.getBranchTarget(i);
+
+                int target = indexOf(section, targets[i]);
+                if (target >= 0) {
+                    leaders[target] = true;
+                }
+            }
+
+            if (flow == OpcodeTable.FLOW_JUMP || flow == OpcodeTable.FLOW_BRANCH || flow == OpcodeTable.FLOW_RETURN) {
+                leaders[i + 1] = true;
+            } else if (i + 1 < count && section.getAddress(i) + section.getLength(i) != section.getAddress(i + 1)) {
+                // Gap between instructions, e.g. after unknown opcode or not reached by recursive traversal
+                leaders[i + 1] = true;
+            }
+        }
+
+        int blocks = 0;
+        for (int i = 0; i < count; ++i) {
+            if (leaders[i]) ++blocks;
+        }
+
+        ControlFlowGraph graph = new ControlFlowGraph();
+        graph.blockAddresses = new int[blocks];
+        graph.blockSizes = new int[blocks];
+        graph.instructionCounts = new int[blocks];
+        graph.edgeOffsets = new int[blocks + 1];
+
+        int[] blockOf = new int[count];
+        int[] firstInstructions = new int[blocks + 1];
+        firstInstructions[blocks] = count;
+        int block = -1;
+        for (int i = 0; i < count; ++i) {
+            if (leaders[i]) {
+                firstInstructions[++block] = i;
+                graph.blockAddresses[block] = section.getAddress(i);
+            }
+            blockOf[i] = block;
+            ++graph.instructionCounts[block];
+            graph.blockSizes[block] = section.getAddress(i) + section.getLength(i) - graph.blockAddresses[block];
+        }
+
+        // At most two successors per block
+        int[] edgeTargets = new int[blocks * 2];
+        byte[] edgeTypes = new byte[blocks * 2];
+        int edges = 0;
+
+        for (int b = 0; b < blocks; ++b) {
+            graph.edgeOffsets[b] = edges;
+
+            int last = firstInstructions[b + 1] - 1;
+            int flow = section.getFlow(last);
+
+            int target = indexOf(section, targets[last]);
+            if (target >= 0) {
+                edgeTargets[edges] = blockOf[target];
+                edgeTypes[edges++] = EDGE_JUMP;
+            }
+
+            boolean fallsThrough = flow != OpcodeTable.FLOW_JUMP && flow != OpcodeTable.FLOW_RETURN;
+            if (fallsThrough && last + 1 < count && section.getAddress(last) + section.getLength(last) == section.getAddress(last + 1)) {
+                edgeTargets[edges] = b + 1;
+                edgeTypes[edges++] = EDGE_FALLTHROUGH;
+            }
+        }
+        graph.edgeOffsets[blocks] = edges;
+
+        graph.edgeTargets = Arrays.copyOf(edgeTargets, edges);
+        graph.edgeTypes = Arrays.copyOf(edgeTypes, edges);
+
+        return graph;
+    }
+
+    // Index of instruction starting at address or -1
+    private static int indexOf(DecodedSection section, int address) {
+        if (address == MachineCodeInterpreter.NO_TARGET) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = section.getInstructionCount() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midAddress = section.getAddress(mid);
+
+            if (midAddress < address) {
+                low = mid + 1;
+            } else if (midAddress > address) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,87 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index of CALL, JMP and conditional jump instructions by address of their target.
+ * <p>
+ * Targets and addresses of referencing instructions are kept in two parallel int arrays sorted by target,
+ * references to one target are sorted by address.
+ */
+public class CrossReferenceIndex {
+    private final int[] targets;
+    private final int[] sources;
+
+    private CrossReferenceIndex(int[] targets, int[] sources) {
+        this.targets = targets;
+        this.sources = sources;
+    }
+
+    public static CrossReferenceIndex build(List<DecodedSection> decodedSections) {
+        int count = 0;
+        for (DecodedSection decodedSection : decodedSections) {
+            count += decodedSection.getInstructionCount();
+        }
+
+        // Target in high bits and source in low bits, sorting orders references by target then source
+        long[] references = new long[count];
+        int n = 0;
+        for (DecodedSection decodedSection : decodedSections) {
+            for (int i = 0; i < decodedSection.getInstructionCount(); ++i) {
+                if (decodedSection.getFlow(i) == OpcodeTable.FLOW_NONE) continue;
+
+                int target = decodedSection.getBranchTarget(i);
+                if (target != MachineCodeInterpreter.NO_TARGET) {
+                    references[n++] = (long) target << 32 | (decodedSection.getAddress(i) & 0xFFFFFFFFL);
+                }
+            }
+        }
+        Arrays.sort(references, 0, n);
+
+        int[] targets = new int[n];
+        int[] sources = new int[n];
+        for (int i = 0; i < n; ++i) {
+            targets[i] = (int) (references[i] >> 32);
+            sources[i] = (int) references[i];
+        }
+
+        return new CrossReferenceIndex(targets, sources);
+    }
+
+    /**
+     * @return addresses of instructions referencing target, sorted ascending
+     */
+    public int[] getReferences(int target) {
+        return Arrays.copyOfRange(sources, lowerBound(target), upperBound(target));
+    }
+
+    public int getReferenceCount(int target) {
+        return upperBound(target) - lowerBound(target);
+    }
+
+    public int size() {
+        return targets.length;
+    }
+
+    // Index of first target not less than given
+    private int lowerBound(int target) {
+        int low = 0;
+        int high = targets.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (targets[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    // Index after last reference to target
+    private int upperBound(int target) {
+        return target == Integer.MAX_VALUE ? targets.length : lowerBound(target + 1);
+    }
+}
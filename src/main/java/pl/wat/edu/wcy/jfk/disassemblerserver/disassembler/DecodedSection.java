@@ -0,0 +1,145 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Instructions decoded from one code section, kept as parallel primitive arrays.
+ * <p>
+ * Operand values are not copied out of machine code, they stay encoded in section bytes and text of
+ * instruction is rendered only when it is read from the list.
+ * Rows added at the beginning of the list (e.g. entry point) are kept as they are.
+ */
+public class DecodedSection extends AbstractList<InterpretedInstruction> {
+    private final MachineCodeInterpreter interpreter;
+    private final ByteBuffer code;
+    private final int base;
+
+    private final List<InterpretedInstruction> header = new ArrayList<>();
+
+    private int count;
+    private int[] addresses;
+    private int[] lengths;
+    private int[] patterns;
+    private int[] prefixes;
+
+    private ImportTable importTable;
+
+    DecodedSection(MachineCodeInterpreter interpreter, ByteBuffer code, int base, int capacity) {
+        this.interpreter = interpreter;
+        this.code = code;
+        this.base = base;
+
+        capacity = Math.max(capacity, 16);
+        addresses = new int[capacity];
+        lengths = new int[capacity];
+        patterns = new int[capacity];
+        prefixes = new int[capacity];
+    }
+
+    void append(int address, int length, int pattern, int prefix) {
+        if (count == addresses.length) {
+            int capacity = count + (count >> 1);
+            addresses = Arrays.copyOf(addresses, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            patterns = Arrays.copyOf(patterns, capacity);
+            prefixes = Arrays.copyOf(prefixes, capacity);
+        }
+
+        addresses[count] = address;
+        lengths[count] = length;
+        patterns[count] = pattern;
+        prefixes[count] = prefix;
+        ++count;
+    }
+
+    @Override
+    public InterpretedInstruction get(int index) {
+        if (index < header.size()) {
+            return header.get(index);
+        }
+
+        int i = index - header.size();
+        if (i >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+
+        InterpretedInstruction instruction = interpreter.render(code, addresses[i] - base, addresses[i], lengths[i], patterns[i], prefixes[i]);
+        if (importTable == null) {
+            return instruction;
+        }
+
+        // Calls and jumps through import address table are annotated with imported function
+        int target = interpreter.getIndirectTarget(code, addresses[i] - base, patterns[i], prefixes[i]);
+        String symbol = target == MachineCodeInterpreter.NO_TARGET ? null : importTable.getSymbol(target);
+        if (symbol == null) {
+            return instruction;
+        }
+
+        return new InterpretedInstruction(instruction.getAddr(), instruction.getOpcode(), instruction.getMnemo(),
+                instruction.getOp1() + " <" + symbol + ">", instruction.getOp2(), instruction.getOp3());
+    }
+
+    @Override
+    public int size() {
+        return header.size() + count;
+    }
+
+    /**
+     * Only rows placed before decoded instructions can be added.
+     */
+    @Override
+    public void add(int index, InterpretedInstruction element) {
+        if (index > header.size()) {
+            throw new UnsupportedOperationException("Decoded instructions can't be modified");
+        }
+
+        header.add(index, element);
+        ++modCount;
+    }
+
+    /**
+     * @param importTable imports used to annotate instructions read from the list, null turns annotations off
+     */
+    public void setImportTable(ImportTable importTable) {
+        this.importTable = importTable;
+    }
+
+    public int getInstructionCount() {
+        return count;
+    }
+
+    public int getAddress(int i) {
+        return addresses[i];
+    }
+
+    public int getLength(int i) {
+        return lengths[i];
+    }
+
+    public int getPattern(int i) {
+        return patterns[i];
+    }
+
+    int getPrefixes(int i) {
+        return prefixes[i];
+    }
+
+    /**
+     * @return one of OpcodeTable.FLOW_* constants
+     */
+    public int getFlow(int i) {
+        return interpreter.getOpcodeTable().getFlow(patterns[i]);
+    }
+
+    /**
+     * @return address of rel8 or rel32 branch target of instruction or MachineCodeInterpreter.NO_TARGET
+     */
+    public int getBranchTarget(int i) {
+        int target = interpreter.getBranchTarget(code, addresses[i] - base, lengths[i], patterns[i], prefixes[i]);
+        return target == MachineCodeInterpreter.NO_TARGET ? target : target + base;
+    }
+}
@@ -0,0 +1,114 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sorted virtual addresses of function starts found in code sections.
+ * <p>
+ * Functions start at entry point, at PUSH EBP; MOV EBP, ESP prologues on instruction boundaries and at targets
+ * of CALL instructions of code reachable from these.
+ */
+@Getter
+public class FunctionTable {
+    private int[] starts;
+
+    private FunctionTable(int[] starts) {
+        this.starts = starts;
+    }
+
+    /**
+     * Prologues are taken only where linear sweep of the section starts an instruction, bytes 55 8B EC
+     * inside other instructions aren't roots.
+     *
+     * @return entry point and addresses of prologues, recursive traversal from them gives code for {@link #build}
+     */
+    public static int[] findRoots(MachineCodeInterpreter interpreter, List<ByteBuffer> machineCode, List<PEFile.Code.SectionTable> codeTables, int imageBase, int entryPoint) {
+        int[] candidates = new int[16];
+        int count = 0;
+
+        candidates[count++] = entryPoint;
+
+        for (int l = 0; l < machineCode.size(); ++l) {
+            ByteBuffer code = machineCode.get(l);
+            int base = imageBase + codeTables.get(l).getVirtualAdress();
+            int size = Math.min(codeTables.get(l).getMisc(), code.limit());
+
+            InstructionBoundaries boundaries = interpreter.scan(code, codeTables.get(l));
+            for (int i = 0; i < boundaries.size(); ++i) {
+                int p = boundaries.getOffset(i);
+                if (p + 2 < size && isPrologue(code, p)) {
+                    if (count == candidates.length) {
+                        candidates = Arrays.copyOf(candidates, count * 2);
+                    }
+                    candidates[count++] = base + p;
+                }
+            }
+        }
+
+        return Arrays.copyOf(candidates, count);
+    }
+
+    /**
+     * @param roots           addresses returned by {@link #findRoots}
+     * @param decodedSections code reachable from roots
+     */
+    public static FunctionTable build(int[] roots, List<DecodedSection> decodedSections, List<PEFile.Code.SectionTable> codeTables, int imageBase) {
+        int[] candidates = roots.clone();
+        int count = candidates.length;
+
+        for (DecodedSection decodedSection : decodedSections) {
+            for (int i = 0; i < decodedSection.getInstructionCount(); ++i) {
+                if (decodedSection.getFlow(i) != OpcodeTable.FLOW_CALL) continue;
+
+                int target = decodedSection.getBranchTarget(i);
+                if (target != MachineCodeInterpreter.NO_TARGET && isCode(target, codeTables, imageBase)) {
+                    if (count == candidates.length) {
+                        candidates = Arrays.copyOf(candidates, Math.max(16, count * 2));
+                    }
+                    candidates[count++] = target;
+                }
+            }
+        }
+
+        Arrays.sort(candidates, 0, count);
+
+        int unique = 0;
+        for (int i = 0; i < count; ++i) {
+            if (unique == 0 || candidates[unique - 1] != candidates[i]) {
+                candidates[unique++] = candidates[i];
+            }
+        }
+
+        return new FunctionTable(Arrays.copyOf(candidates, unique));
+    }
+
+    public boolean contains(int address) {
+        return Arrays.binarySearch(starts, address) >= 0;
+    }
+
+    // PUSH EBP followed by MOV EBP, ESP in any of its two encodings
+    private static boolean isPrologue(ByteBuffer code, int p) {
+        if ((code.get(p) & 0xFF) != 0x55) {
+            return false;
+        }
+
+        int b1 = code.get(p + 1) & 0xFF;
+        int b2 = code.get(p + 2) & 0xFF;
+        return (b1 == 0x8B && b2 == 0xEC) || (b1 == 0x89 && b2 == 0xE5);
+    }
+
+    private static boolean isCode(int address, List<PEFile.Code.SectionTable> codeTables, int imageBase) {
+        for (PEFile.Code.SectionTable codeTable : codeTables) {
+            int p = address - imageBase - codeTable.getVirtualAdress();
+            if (p >= 0 && p < codeTable.getMisc()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
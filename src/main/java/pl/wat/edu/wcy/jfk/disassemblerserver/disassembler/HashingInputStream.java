@@ -0,0 +1,75 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes SHA-256 of an upload while it is read by {@link PEFile}, bytes skipped by PEFile are read and hashed too.
+ * <p>
+ * PEFile closes stream it reads, so closing this stream leaves the upload open: rest of it is hashed by
+ * {@link #digest()} only when the hash is needed, e.g. not for uploads which aren't PE files, and the upload
+ * is closed by {@link #release()}.
+ */
+public class HashingInputStream extends DigestInputStream {
+    private static final int DRAIN_BUFFER_SIZE = 8 * 1024;
+
+    private final byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+
+    public HashingInputStream(InputStream stream) {
+        super(stream, sha256());
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        int read = read(buffer, 0, (int) Math.min(n, buffer.length));
+        return Math.max(read, 0);
+    }
+
+    @Override
+    public void close() {
+        // Upload is closed by release
+    }
+
+    /**
+     * Reads the rest of the upload.
+     *
+     * @return SHA-256 of the whole upload, in the same form as ids of stored binaries
+     */
+    public String digest() throws IOException {
+        while (read(buffer, 0, buffer.length) >= 0) {
+            // Hashed by read
+        }
+
+        return hex(getMessageDigest());
+    }
+
+    /**
+     * @return SHA-256 of bytes remaining in buffer, in the same form as {@link #digest()}
+     */
+    static String sha256(ByteBuffer buffer) {
+        MessageDigest messageDigest = sha256();
+        messageDigest.update(buffer.duplicate());
+        return hex(messageDigest);
+    }
+
+    private static String hex(MessageDigest messageDigest) {
+        return new HexBinaryAdapter().marshal(messageDigest.digest()).toLowerCase();
+    }
+
+    public void release() throws IOException {
+        in.close();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+/**
+ * Upper case hex digits of bytes and integers written through lookup tables, gives the same text
+ * as {@code String.format("%02X")}, {@code "%04X"} and {@code "%08X"} without creating Formatter.
+ */
+public class HexFormatter {
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+
+    // Text of every byte, shared by all instructions
+    private static final String[] BYTES = new String[256];
+
+    static {
+        for (int i = 0; i < BYTES.length; ++i) {
+            BYTES[i] = new String(new char[]{DIGITS[i >>> 4], DIGITS[i & 0xF]});
+        }
+    }
+
+    private HexFormatter() {
+    }
+
+    /**
+     * @return two digits of low byte of value, like {@code "%02X"} of byte
+     */
+    public static String byteHex(int value) {
+        return BYTES[value & 0xFF];
+    }
+
+    /**
+     * @return eight digits of value, like {@code "%08X"} of int
+     */
+    public static String dwordHex(int value) {
+        return appendDword(new StringBuilder(8), value).toString();
+    }
+
+    public static StringBuilder appendByte(StringBuilder output, int value) {
+        return output.append(DIGITS[(value >>> 4) & 0xF]).append(DIGITS[value & 0xF]);
+    }
+
+    /**
+     * Appends at least four digits of value, like {@code "%04X"} of int, so negative value has eight digits.
+     */
+    public static StringBuilder appendWord(StringBuilder output, int value) {
+        int count = Math.max(4, (35 - Integer.numberOfLeadingZeros(value)) >>> 2);
+        for (int shift = (count - 1) * 4; shift >= 0; shift -= 4) {
+            output.append(DIGITS[(value >>> shift) & 0xF]);
+        }
+        return output;
+    }
+
+    public static StringBuilder appendDword(StringBuilder output, int value) {
+        for (int shift = 28; shift >= 0; shift -= 4) {
+            output.append(DIGITS[(value >>> shift) & 0xF]);
+        }
+        return output;
+    }
+}
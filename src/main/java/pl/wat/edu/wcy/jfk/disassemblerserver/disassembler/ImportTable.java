@@ -0,0 +1,155 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Imported functions by address of their import address table slot, e.g. KERNEL32.dll!ExitProcess.
+ * <p>
+ * Import directory is parsed on first lookup, binaries which are never annotated keep only bytes of
+ * the section with imports. Descriptors, lookup tables and names outside that section are skipped.
+ */
+public class ImportTable {
+    private static final int DESCRIPTOR_SIZE = 20;
+    private static final int THUNK_SIZE = 4;
+    private static final int ORDINAL_FLAG = 0x80000000;
+    private static final int MAX_NAME_LENGTH = 256;
+
+    private final ByteBuffer section;
+    private final int sectionAddress;
+    private final int directory;
+    private final int imageBase;
+
+    private volatile Symbols symbols;
+
+    // Slot addresses in ascending order with names at the same indexes
+    private static class Symbols {
+        private final int[] addresses;
+        private final String[] names;
+
+        private Symbols(int[] addresses, String[] names) {
+            this.addresses = addresses;
+            this.names = names;
+        }
+    }
+
+    /**
+     * @param section        raw bytes of section containing import directory
+     * @param sectionAddress RVA of the section
+     * @param directory      RVA of import directory
+     */
+    public ImportTable(ByteBuffer section, int sectionAddress, int directory, int imageBase) {
+        this.section = section.slice().order(ByteOrder.LITTLE_ENDIAN);
+        this.sectionAddress = sectionAddress;
+        this.directory = directory;
+        this.imageBase = imageBase;
+    }
+
+    /**
+     * @param address virtual address of import address table slot
+     * @return DLL!Function, DLL!#ordinal for functions imported by ordinal, or null when address isn't a slot
+     */
+    public String getSymbol(int address) {
+        Symbols table = symbols;
+        if (table == null) {
+            synchronized (this) {
+                if (symbols == null) {
+                    symbols = parse();
+                }
+                table = symbols;
+            }
+        }
+
+        int i = Arrays.binarySearch(table.addresses, address);
+        return i >= 0 ? table.names[i] : null;
+    }
+
+    public int size() {
+        getSymbol(0);
+        return symbols.addresses.length;
+    }
+
+    private Symbols parse() {
+        // Address of slot in high half, index of its name in low half, sorted by address
+        long[] slots = new long[16];
+        List<String> names = new ArrayList<>();
+
+        // Crafted directories can't make the work quadratic: descriptors sharing a table are skipped and
+        // all tables together can't have more thunks read than fit in the section
+        Set<Integer> visited = new HashSet<>();
+        int thunksLeft = section.limit() / THUNK_SIZE;
+
+        for (int d = offset(directory, DESCRIPTOR_SIZE); d >= 0 && d + DESCRIPTOR_SIZE <= section.limit(); d += DESCRIPTOR_SIZE) {
+            int lookupTable = section.getInt(d);
+            int name = section.getInt(d + 12);
+            int addressTable = section.getInt(d + 16);
+
+            // Directory ends with zeroed descriptor
+            if (lookupTable == 0 && name == 0 && addressTable == 0) break;
+
+            // Bound imports overwrite address table, names are read from lookup table when it's present
+            int thunks = lookupTable != 0 ? lookupTable : addressTable;
+            if (!visited.add(thunks) || (addressTable != thunks && !visited.add(addressTable))) continue;
+
+            String dll = string(name);
+            if (dll == null) continue;
+
+            for (int t = 0; thunksLeft > 0; ++t, --thunksLeft) {
+                int thunk = offset(thunks + t * THUNK_SIZE, THUNK_SIZE);
+                if (thunk < 0) break;
+
+                int value = section.getInt(thunk);
+                if (value == 0) break;
+
+                String function = (value & ORDINAL_FLAG) != 0 ? "#" + (value & 0xFFFF) : string(value + 2);
+                if (function == null) continue;
+
+                if (names.size() == slots.length) {
+                    slots = Arrays.copyOf(slots, slots.length * 2);
+                }
+                slots[names.size()] = (long) (imageBase + addressTable + t * THUNK_SIZE) << 32 | names.size();
+                names.add(dll + "!" + function);
+            }
+        }
+
+        int count = names.size();
+        Arrays.sort(slots, 0, count);
+
+        int[] addresses = new int[count];
+        String[] sortedNames = new String[count];
+        for (int i = 0; i < count; ++i) {
+            addresses[i] = (int) (slots[i] >> 32);
+            sortedNames[i] = names.get((int) slots[i]);
+        }
+
+        return new Symbols(addresses, sortedNames);
+    }
+
+    // Offset in section of size bytes at RVA, -1 when they aren't in the section
+    private int offset(int rva, int size) {
+        long offset = (rva & 0xFFFFFFFFL) - (sectionAddress & 0xFFFFFFFFL);
+        return offset >= 0 && offset + size <= section.limit() ? (int) offset : -1;
+    }
+
+    // Zero terminated ASCII name at RVA, null when it doesn't end in the section
+    private String string(int rva) {
+        int start = offset(rva, 1);
+        if (start < 0) return null;
+
+        StringBuilder name = new StringBuilder();
+        for (int i = start; i < section.limit() && name.length() < MAX_NAME_LENGTH; ++i) {
+            byte b = section.get(i);
+            if (b == 0) {
+                return name.toString();
+            }
+            name.append((char) (b & 0xFF));
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,126 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Reads upload once: bytes are hashed and headers parsed as they arrive, every code section is decoded
+ * as soon as it is read, while rest of the upload is still being received. Mapped upload is read in place.
+ */
+public class IngestPipeline {
+    private final MachineCodeInterpreter interpreter;
+    private final Executor executor;
+    private final int parallelism;
+
+    @Getter
+    @AllArgsConstructor
+    public static class Result {
+        // SHA-256 of the whole upload, in the same form as ids of stored binaries, null when upload isn't PE file
+        private String id;
+        private PEFile peFile;
+        // Linear sweep of code sections in order of code tables, empty when upload isn't PE file
+        private List<DecodedSection> decodedSections;
+    }
+
+    /**
+     * At most parallelism sections of one upload are decoded at the same time, reading waits for a section
+     * to finish before next one is submitted. Sections are split into
+     * {@link MachineCodeInterpreter#getMaxSectionChunks()} chunks decoded by executor.
+     */
+    public IngestPipeline(MachineCodeInterpreter interpreter, Executor executor, int parallelism) {
+        this.interpreter = interpreter;
+        this.executor = executor;
+        this.parallelism = Math.max(parallelism, 1);
+    }
+
+    public Result ingest(InputStream inputStream) throws IOException {
+        HashingInputStream input = new HashingInputStream(inputStream);
+
+        Map<Integer, CompletableFuture<DecodedSection>> decoding = new TreeMap<>();
+        try {
+            PEFile peFile = new PEFile(input, submitter(decoding));
+
+            // Reading stopped after headers, rest of the upload isn't read just for the hash
+            if (!peFile.isPE()) {
+                return new Result(null, peFile, new ArrayList<>());
+            }
+
+            List<DecodedSection> decodedSections = join(decoding);
+
+            return new Result(input.digest(), peFile, decodedSections);
+        } catch (IOException | RuntimeException e) {
+            // Sections already submitted aren't needed when upload turns out to be broken
+            cancel(decoding);
+            throw e;
+        } finally {
+            input.release();
+        }
+    }
+
+    /**
+     * Mapped upload is parsed in place and hashed while its code sections are decoded.
+     */
+    public Result ingest(MappedUpload upload) {
+        Map<Integer, CompletableFuture<DecodedSection>> decoding = new TreeMap<>();
+        try {
+            PEFile peFile = new PEFile(upload.getBuffer(), submitter(decoding));
+
+            if (!peFile.isPE()) {
+                return new Result(null, peFile, new ArrayList<>());
+            }
+
+            String id = upload.digest();
+
+            return new Result(id, peFile, join(decoding));
+        } catch (RuntimeException e) {
+            cancel(decoding);
+            throw e;
+        }
+    }
+
+    // Listener is called by the reading thread, sections are decoded by executor
+    private PEFile.CodeSectionListener submitter(Map<Integer, CompletableFuture<DecodedSection>> decoding) {
+        Semaphore permits = new Semaphore(parallelism);
+
+        return (section, machineCode, codeTable, imageBase) -> {
+            permits.acquireUninterruptibly();
+
+            CompletableFuture<DecodedSection> decodedSection = CompletableFuture.supplyAsync(() -> interpreter.decode(machineCode, codeTable, imageBase, executor, interpreter.getMaxSectionChunks()), executor);
+            decodedSection.whenComplete((result, e) -> permits.release());
+            decoding.put(section, decodedSection);
+        };
+    }
+
+    private static List<DecodedSection> join(Map<Integer, CompletableFuture<DecodedSection>> decoding) {
+        List<DecodedSection> decodedSections = new ArrayList<>();
+        try {
+            for (CompletableFuture<DecodedSection> section : decoding.values()) {
+                decodedSections.add(section.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+
+        return decodedSections;
+    }
+
+    private static void cancel(Map<Integer, CompletableFuture<DecodedSection>> decoding) {
+        for (CompletableFuture<DecodedSection> section : decoding.values()) {
+            section.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import java.util.Arrays;
+
+/**
+ * Offsets and lengths of instructions in one code section, found by {@link MachineCodeInterpreter#scan}.
+ * Offsets are relative to the beginning of section and sorted ascending.
+ */
+public class InstructionBoundaries {
+    private int count;
+    private int[] offsets;
+    private int[] lengths;
+
+    InstructionBoundaries(int capacity) {
+        capacity = Math.max(capacity, 16);
+        offsets = new int[capacity];
+        lengths = new int[capacity];
+    }
+
+    void append(int offset, int length) {
+        if (count == offsets.length) {
+            int capacity = count + (count >> 1);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+
+        offsets[count] = offset;
+        lengths[count] = length;
+        ++count;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getOffset(int i) {
+        return offsets[i];
+    }
+
+    public int getLength(int i) {
+        return lengths[i];
+    }
+
+    public int[] getOffsets() {
+        return Arrays.copyOf(offsets, count);
+    }
+
+    public int[] getLengths() {
+        return Arrays.copyOf(lengths, count);
+    }
+
+    /**
+     * @return index of instruction containing given offset or -1 when offset is not inside any instruction
+     */
+    public int indexOf(int offset) {
+        int i = Arrays.binarySearch(offsets, 0, count, offset);
+        if (i >= 0) {
+            return i;
+        }
+
+        i = -i - 2;
+        return i >= 0 && offset < offsets[i] + lengths[i] ? i : -1;
+    }
+}
@@ -16,6 +16,8 @@ import java.util.regex.Pattern;
 
 @Getter
 public class InstructionPatternParser {
+    public static final String CODER32_PATH = "coder32.txt";
+
     private List<List<InstructionPattern>> oneByteInstructions;
     private List<List<InstructionPattern>> twoByteInstructions;
 
@@ -644,8 +646,7 @@ public class InstructionPatternParser {
         this.oneByteInstructions = lists;
         this.twoByteInstructions = twoBytes;
 
-        String coder32path = "coder32.txt";
-        InstructionParser instructionParser = new InstructionParser(coder32path);
+        InstructionParser instructionParser = new InstructionParser(CODER32_PATH);
         List<InstructionParser.Instruction> instructions = instructionParser.getInstructions();
 
         List<InstructionPattern> ob = new ArrayList<>();
@@ -815,7 +816,7 @@ public class InstructionPatternParser {
 
     @Getter
     @AllArgsConstructor
-    public class InstructionPattern {
+    public static class InstructionPattern {
         private byte priOpcode;
         private String opcode;
         private String mnemo;
@@ -0,0 +1,22 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+/**
+ * Receives instructions while {@link MachineCodeInterpreter} decodes them, so they can be processed
+ * in one pass without keeping decoded sections in memory.
+ */
+public interface InstructionSink {
+    /**
+     * Called before instructions of every code section.
+     *
+     * @param address virtual address of the section
+     */
+    void onSectionStart(int section, PEFile.Code.SectionTable codeTable, int address);
+
+    void onInstruction(InterpretedInstruction instruction);
+
+    /**
+     * Called for byte with unknown opcode, which is skipped, and for instruction cut off by the end
+     * of section, which ends decoding of the section.
+     */
+    void onError(int address, String message);
+}
@@ -0,0 +1,165 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of the final {@link InstructionPatternParser} tables.
+ * <p>
+ * The snapshot is written at build time (see the exec-maven-plugin execution in pom.xml) and lets the server
+ * skip parsing i386.pdf and coder32.txt on startup. It stores a fingerprint of both source documents, so
+ * a snapshot built from different documents is treated as stale and ignored.
+ */
+@Getter
+public class InstructionTableSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(InstructionTableSnapshot.class);
+
+    public static final String SNAPSHOT_PATH = "instructions.bin";
+
+    private static final int MAGIC = 0x49333836;
+    private static final int VERSION = 1;
+
+    private List<List<InstructionPatternParser.InstructionPattern>> oneByteInstructions;
+    private List<List<InstructionPatternParser.InstructionPattern>> twoByteInstructions;
+
+    private InstructionTableSnapshot(List<List<InstructionPatternParser.InstructionPattern>> oneByteInstructions, List<List<InstructionPatternParser.InstructionPattern>> twoByteInstructions) {
+        this.oneByteInstructions = oneByteInstructions;
+        this.twoByteInstructions = twoByteInstructions;
+    }
+
+    /**
+     * Loads snapshot from the classpath.
+     *
+     * @return loaded tables or null when snapshot is missing, unreadable or was built from other documents
+     */
+    public static InstructionTableSnapshot load(String snapshotPath, String i386path) {
+        InputStream inputStream = InstructionTableSnapshot.class.getClassLoader().getResourceAsStream(snapshotPath);
+        if (inputStream == null) {
+            logger.warn("Instruction table snapshot " + snapshotPath + " not found");
+            return null;
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                logger.warn("Instruction table snapshot " + snapshotPath + " has unsupported format");
+                return null;
+            }
+
+            if (input.readLong() != fingerprint(i386path)) {
+                logger.warn("Instruction table snapshot " + snapshotPath + " is stale");
+                return null;
+            }
+
+            List<List<InstructionPatternParser.InstructionPattern>> oneByteInstructions = readTable(input);
+            List<List<InstructionPatternParser.InstructionPattern>> twoByteInstructions = readTable(input);
+
+            return new InstructionTableSnapshot(oneByteInstructions, twoByteInstructions);
+        } catch (IOException e) {
+            logger.warn("Instruction table snapshot " + snapshotPath + " could not be read: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Interpreter of tables from snapshot on the classpath, or of tables parsed from documents when snapshot can't be used.
+     */
+    public static MachineCodeInterpreter createInterpreter(String i386path) {
+        InstructionTableSnapshot snapshot = load(SNAPSHOT_PATH, i386path);
+        if (snapshot != null) {
+            return new MachineCodeInterpreter(snapshot.getOneByteInstructions(), snapshot.getTwoByteInstructions());
+        }
+
+        InstructionPatternParser instructionPatternParser = new InstructionPatternParser(i386path);
+        return new MachineCodeInterpreter(instructionPatternParser.getOneByteInstructions(), instructionPatternParser.getTwoByteInstructions());
+    }
+
+    public static void write(File file, String i386path, InstructionPatternParser instructionPatternParser) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(fingerprint(i386path));
+
+            writeTable(output, instructionPatternParser.getOneByteInstructions());
+            writeTable(output, instructionPatternParser.getTwoByteInstructions());
+        }
+    }
+
+    private static List<List<InstructionPatternParser.InstructionPattern>> readTable(DataInputStream input) throws IOException {
+        List<List<InstructionPatternParser.InstructionPattern>> table = new ArrayList<>();
+
+        for (int i = 0; i <= 0xFF; ++i) {
+            int size = input.readUnsignedShort();
+            List<InstructionPatternParser.InstructionPattern> list = new ArrayList<>(size);
+
+            for (int j = 0; j < size; ++j) {
+                byte priOpcode = input.readByte();
+                String opcode = input.readUTF();
+                String mnemo = input.readUTF();
+                String operands = input.readUTF();
+                int length = input.readInt();
+
+                list.add(new InstructionPatternParser.InstructionPattern(priOpcode, opcode, mnemo, operands, length));
+            }
+
+            table.add(list);
+        }
+
+        return table;
+    }
+
+    private static void writeTable(DataOutputStream output, List<List<InstructionPatternParser.InstructionPattern>> table) throws IOException {
+        for (int i = 0; i <= 0xFF; ++i) {
+            List<InstructionPatternParser.InstructionPattern> list = table.get(i);
+            output.writeShort(list.size());
+
+            for (InstructionPatternParser.InstructionPattern instructionPattern : list) {
+                output.writeByte(instructionPattern.getPriOpcode());
+                output.writeUTF(instructionPattern.getOpcode());
+                output.writeUTF(instructionPattern.getMnemo());
+                output.writeUTF(instructionPattern.getOperands());
+                output.writeInt(instructionPattern.getLength());
+            }
+        }
+    }
+
+    // CRC32 of both documents the tables are parsed from
+    private static long fingerprint(String i386path) throws IOException {
+        CRC32 crc32 = new CRC32();
+        byte[] buffer = new byte[8192];
+
+        for (String path : new String[]{i386path, InstructionPatternParser.CODER32_PATH}) {
+            InputStream inputStream = InstructionTableSnapshot.class.getClassLoader().getResourceAsStream(path);
+            if (inputStream == null) {
+                throw new FileNotFoundException(path);
+            }
+
+            try (InputStream input = inputStream) {
+                int in;
+                while ((in = input.read(buffer)) != -1) {
+                    crc32.update(buffer, 0, in);
+                }
+            }
+        }
+
+        return crc32.getValue();
+    }
+
+    /**
+     * Build step entry point, writes snapshot of freshly parsed tables to file given as first argument.
+     */
+    public static void main(String[] args) throws IOException {
+        String i386path = "i386.pdf";
+        File file = new File(args[0]);
+
+        InstructionPatternParser instructionPatternParser = new InstructionPatternParser(i386path);
+        write(file, i386path, instructionPatternParser);
+
+        logger.info("Instruction table snapshot written to " + file);
+    }
+}
@@ -17,9 +17,14 @@ public class InterpretedInstruction {
 
     @Override
     public String toString() {
-        StringBuilder output = new StringBuilder();
+        return appendTo(new StringBuilder()).toString();
+    }
 
-        output.append(String.format("%08X", addr)).append("   ");
+    /**
+     * Appends the same text as {@link #toString()}.
+     */
+    public StringBuilder appendTo(StringBuilder output) {
+        HexFormatter.appendDword(output, addr).append("   ");
         output.append(opcode).append("  ");
         output.append(mnemo).append(" ");
         if (!op1.contentEquals("")) {
@@ -32,6 +37,6 @@ public class InterpretedInstruction {
             }
         }
 
-        return output.toString();
+        return output;
     }
 }
@@ -0,0 +1,48 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes instructions as text listing, one line per instruction.
+ */
+public class ListingWriter implements InstructionSink {
+    private final Writer writer;
+
+    // Every line is built in the same builder
+    private final StringBuilder line = new StringBuilder(128);
+
+    public ListingWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void onSectionStart(int section, PEFile.Code.SectionTable codeTable, int address) {
+        line.append("; section ").append(new String(codeTable.getName()).trim()).append(" at ");
+        HexFormatter.appendDword(line, address);
+        writeLine();
+    }
+
+    @Override
+    public void onInstruction(InterpretedInstruction instruction) {
+        instruction.appendTo(line);
+        writeLine();
+    }
+
+    @Override
+    public void onError(int address, String message) {
+        HexFormatter.appendDword(line.append("; "), address).append(' ').append(message);
+        writeLine();
+    }
+
+    private void writeLine() {
+        try {
+            writer.append(line.append('\n'));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            line.setLength(0);
+        }
+    }
+}
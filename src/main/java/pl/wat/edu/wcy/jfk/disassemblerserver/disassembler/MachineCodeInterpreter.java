@@ -3,91 +3,64 @@ package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MachineCodeInterpreter {
     private static final Logger logger = LoggerFactory.getLogger(MachineCodeInterpreter.class);
 
-    private List<List<InstructionPatternParser.InstructionPattern>> oneByteInstructions;
-    private List<List<InstructionPatternParser.InstructionPattern>> twoByteInstructions;
+    // Prefixes of decoded instruction are packed into one int, indexes into arrays below
+    private static final String[] MNEMO_ADDITIONS = {"", "BND", "REP", "LOCK", "data16", "addr16"};
+    private static final String[] SEGMENT_OVERRIDE_PREFIXES = {"", "CS", "SS", "DS", "ES", "FS", "GS"};
+
+    static final int ADDITION_MASK = 0x7;
+    static final int SEGMENT_SHIFT = 3;
+    static final int SEGMENT_MASK = 0x7;
+    static final int MAP_SHIFT = 6;
+    static final int PRIMARY_OPCODE_SIZE_SHIFT = 8;
+    // Segment used by memory offsets without override prefix
+    private static final int DS = 3;
+
+    // Indexes of values returned by decodeInstruction
+    static final int DECODED_PATTERN = 0;
+    static final int DECODED_PREFIXES = 1;
+    static final int DECODED_OPCODE = 2;
+
+    // Returned by getBranchTarget for instructions without relative operand
+    public static final int NO_TARGET = Integer.MIN_VALUE;
+
+    // Smallest part of section decoded by one thread
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+
+    private OpcodeTable opcodeTable;
+    private ModRmTable modRmTable;
 
-    private List<String> slashDigit;
     private List<String> rb;
     private List<String> rw;
     private List<String> rd;
-    private List<String> r8;
-    private List<String> r16;
-    private List<String> r32;
-    private List<String> effectiveAddress;
-    private List<String> scaledIndex;
-    private List<String> sibr32;
     private List<String> sreg;
-    private List<Integer> slashRSize;
-
-    public MachineCodeInterpreter(List<List<InstructionPatternParser.InstructionPattern>> oneByteInstructions, List<List<InstructionPatternParser.InstructionPattern>> twoByteInstructions) {
-        this.oneByteInstructions = oneByteInstructions;
-        this.twoByteInstructions = twoByteInstructions;
 
-        List<String> digits = new ArrayList<>();
-        for (int i = 0; i <= 7; ++i) {
-            digits.add("/" + i);
-        }
-        int currentDigit = 0;
-        int digitCount = 0;
-        slashDigit = new ArrayList<>();
-        for (int i = 0; i <= 0xFF; ++i) {
-            slashDigit.add(digits.get(currentDigit));
-            ++digitCount;
-            if (digitCount > 7) {
-                digitCount = 0;
-                ++currentDigit;
-            }
-            if (currentDigit > 7) {
-                currentDigit = 0;
-            }
-        }
+    private StringPool stringPool;
 
-        slashRSize = new ArrayList<>();
-        for (int i = 0; i <= 0xFF; ++i) {
-            int size = 0;
+    private TableInstructionDecoder instructionDecoder;
 
-            for (int j = 0x05; j <= 0x3D; j += 8) {
-                if (i == j) {
-                    size += 4;
-                }
-            }
+    private RenderCache renderCache;
 
-            for (int j = 0x04; j <= 0x3C; j += 8) {
-                if (i == j) {
-                    size += 1;
-                }
-            }
+    // Largest number of chunks one section is split into, independent of number of sections decoded at once
+    private int maxSectionChunks = Runtime.getRuntime().availableProcessors();
 
-            for (int j = 0x44; j <= 0x7C; j += 8) {
-                if (i == j) {
-                    size += 1;
-                }
-            }
-
-            for (int j = 0x84; j <= 0xBC; j += 8) {
-                if (i == j) {
-                    size += 1;
-                }
-            }
+    public MachineCodeInterpreter(List<List<InstructionPatternParser.InstructionPattern>> oneByteInstructions, List<List<InstructionPatternParser.InstructionPattern>> twoByteInstructions) {
+        this.opcodeTable = new OpcodeTable(oneByteInstructions, twoByteInstructions);
 
-            if (i >= 0x40 && i <= 0x7F) {
-                size += 1;
-            }
-            if (i >= 0x80 && i <= 0xBF) {
-                size += 4;
-            }
-
-            slashRSize.add(size);
-        }
+        this.modRmTable = new ModRmTable();
 
         rb = new ArrayList<>();
         rb.add("AL");
@@ -119,679 +92,734 @@ public class MachineCodeInterpreter {
         rd.add("ESI");
         rd.add("EDI");
 
-        int regCounter = 0;
-        int regSwap = 0;
-        r8 = new ArrayList<>();
-        r16 = new ArrayList<>();
-        r32 = new ArrayList<>();
-        for (int i = 0; i <= 0xFF; ++i) {
-            r8.add(rb.get(regCounter));
-            r16.add(rw.get(regCounter));
-            r32.add(rd.get(regCounter));
-
-            ++regSwap;
-            if (regSwap > 7) {
-                ++regCounter;
-                regSwap = 0;
-            }
-            if (regCounter > 7) {
-                regCounter = 0;
-            }
+        sreg = new ArrayList<>();
+        sreg.add("ES");
+        sreg.add("CS");
+        sreg.add("SS");
+        sreg.add("DS");
+        sreg.add("FS");
+        sreg.add("GS");
+        sreg.add("");
+        sreg.add("");
+
+        stringPool = new StringPool(opcodeTable, modRmTable, MNEMO_ADDITIONS, SEGMENT_OVERRIDE_PREFIXES, rd);
+
+        instructionDecoder = new TableInstructionDecoder(opcodeTable, modRmTable);
+    }
+
+    /**
+     * Shares rendered text of instructions with equal bytes between all decoded sections.
+     *
+     * @param capacity number of cached instructions, 0 renders every instruction again
+     */
+    public void useRenderCache(int capacity) {
+        renderCache = capacity > 0 ? new RenderCache(capacity) : null;
+    }
+
+    public RenderCache getRenderCache() {
+        return renderCache;
+    }
+
+    /**
+     * @param maxChunks largest number of chunks every section is split into when sections are decoded with executor
+     */
+    public void useSectionChunks(int maxChunks) {
+        maxSectionChunks = Math.max(maxChunks, 1);
+    }
+
+    public int getMaxSectionChunks() {
+        return maxSectionChunks;
+    }
+
+    public List<List<InterpretedInstruction>> interpret(byte[] machineCode, List<PEFile.Code.SectionTable> codeTables, int imageBase) {
+        return interpret(Collections.singletonList(ByteBuffer.wrap(machineCode).asReadOnlyBuffer()), codeTables, imageBase);
+    }
+
+    /**
+     * @param machineCode code of each section, read in place from index 0 to limit
+     * @return decoded sections, instructions are rendered to text when they are read
+     */
+    public List<List<InterpretedInstruction>> interpret(List<ByteBuffer> machineCode, List<PEFile.Code.SectionTable> codeTables, int imageBase) {
+        List<List<InterpretedInstruction>> interpretedInstructions = new ArrayList<>();
+
+        for (int l = 0; l < machineCode.size(); ++l) {
+            interpretedInstructions.add(decode(machineCode.get(l), codeTables.get(l), imageBase));
         }
 
-        regCounter = 0;
-        effectiveAddress = new ArrayList<>();
-        for (int i = 0; i <= 0xFF; ++i) {
-            if (i >= 0x00 && i <= 0x3F) {
-                effectiveAddress.add("[" + rd.get(regCounter) + "]");
-                ++regCounter;
+        return interpretedInstructions;
+    }
 
-                if (regCounter > 7) {
-                    regCounter = 0;
-                }
+    /**
+     * Linear sweep of sections which passes every instruction to sink as soon as it is rendered,
+     * nothing is kept after it is passed.
+     */
+    public void interpret(List<ByteBuffer> machineCode, List<PEFile.Code.SectionTable> codeTables, int imageBase, InstructionSink sink) {
+        int[] decoded = new int[3];
 
-                for (int j = 0x04; j <= 0x3C; j += 8) {
-                    if (i == j) {
-                        effectiveAddress.set(j, "[--]");
-                    }
-                }
-                for (int j = 0x05; j <= 0x3D; j += 8) {
-                    if (i == j) {
-                        effectiveAddress.set(j, "disp32");
-                    }
-                }
-            }
-            if (i >= 0x40 && i <= 0x7F) {
-                effectiveAddress.add("disp8[" + rd.get(regCounter) + "]");
-                ++regCounter;
+        for (int l = 0; l < machineCode.size(); ++l) {
+            ByteBuffer code = machineCode.get(l).slice().order(ByteOrder.LITTLE_ENDIAN);
+            PEFile.Code.SectionTable codeTable = codeTables.get(l);
+            int base = imageBase + codeTable.getVirtualAdress();
 
-                if (regCounter > 7) {
-                    regCounter = 0;
-                }
+            sink.onSectionStart(l, codeTable, base);
 
-                for (int j = 0x44; j <= 0x7C; j += 8) {
-                    if (i == j) {
-                        effectiveAddress.set(j, "disp8[--]");
+            int p = 0;
+            while (p < codeTable.getMisc()) {
+                int length;
+                InterpretedInstruction instruction = null;
+
+                try {
+                    length = decodeInstruction(code, p, decoded);
+                    if (decoded[DECODED_PATTERN] >= 0) {
+                        instruction = render(code, p, p + base, length, decoded[DECODED_PATTERN], decoded[DECODED_PREFIXES]);
                     }
+                } catch (IndexOutOfBoundsException e) {
+                    sink.onError(p + base, "Instruction cut off by the end of section");
+                    break;
                 }
-            }
-            if (i >= 0x80 && i <= 0xBF) {
-                effectiveAddress.add("disp32[" + rd.get(regCounter) + "]");
-                ++regCounter;
 
-                if (regCounter > 7) {
-                    regCounter = 0;
+                if (instruction != null) {
+                    sink.onInstruction(instruction);
+                } else {
+                    sink.onError(p + base, "Unknown opcode " + HexFormatter.byteHex(code.get(p)) + " " + HexFormatter.byteHex(decoded[DECODED_OPCODE]));
                 }
 
-                for (int j = 0x84; j <= 0xBC; j += 8) {
-                    if (i == j) {
-                        effectiveAddress.set(j, "disp32[--]");
-                    }
-                }
+                p += length;
             }
-            if (i >= 0xC0 && i <= 0xFF) {
-                effectiveAddress.add("r" + regCounter);
-                ++regCounter;
+        }
+    }
 
-                if (regCounter > 7) {
-                    regCounter = 0;
-                }
+    /**
+     * Decodes sections concurrently, at most parallelism sections of this call are decoded at the same time
+     * and every section is split into at most {@link #getMaxSectionChunks()} chunks.
+     *
+     * @return decoded sections in the same order as machineCode
+     */
+    public List<List<InterpretedInstruction>> interpret(List<ByteBuffer> machineCode, List<PEFile.Code.SectionTable> codeTables, int imageBase, Executor executor, int parallelism) {
+        return new ArrayList<>(decode(machineCode, codeTables, imageBase, executor, parallelism));
+    }
+
+    public List<DecodedSection> decode(List<ByteBuffer> machineCode, List<PEFile.Code.SectionTable> codeTables, int imageBase, Executor executor, int parallelism) {
+        int sections = machineCode.size();
+        if (sections == 1) {
+            return Collections.singletonList(decode(machineCode.get(0), codeTables.get(0), imageBase, executor, maxSectionChunks));
+        }
+
+        DecodedSection[] decodedSections = new DecodedSection[sections];
+        if (parallelism < 2) {
+            for (int l = 0; l < sections; ++l) {
+                decodedSections[l] = decode(machineCode.get(l), codeTables.get(l), imageBase, executor, maxSectionChunks);
             }
+
+            return Arrays.asList(decodedSections);
         }
 
-        regCounter = 0;
-        regSwap = 0;
-        scaledIndex = new ArrayList<>();
-        for (int i = 0; i <= 0xFF; ++i) {
-            if (i >= 0x00 && i <= 0x3F) {
-                scaledIndex.add(rd.get(regCounter));
-                ++regSwap;
-
-                if (regSwap > 7) {
-                    ++regCounter;
-                    regSwap = 0;
-                }
-                if (regCounter > 7) {
-                    regCounter = 0;
-                }
+        AtomicInteger nextSection = new AtomicInteger();
 
-                for (int j = 0x20; j <= 0x27; ++j) {
-                    if (i == j) {
-                        scaledIndex.set(j, "");
-                    }
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[Math.min(parallelism, sections)];
+        for (int i = 0; i < workers.length; ++i) {
+            workers[i] = CompletableFuture.runAsync(() -> {
+                int l;
+                while ((l = nextSection.getAndIncrement()) < sections) {
+                    decodedSections[l] = decode(machineCode.get(l), codeTables.get(l), imageBase, executor, maxSectionChunks);
                 }
-            }
-            if (i >= 0x40 && i <= 0x7F) {
-                scaledIndex.add(rd.get(regCounter) + "*2");
-                ++regSwap;
+            }, executor);
+        }
 
-                if (regSwap > 7) {
-                    ++regCounter;
-                    regSwap = 0;
-                }
-                if (regCounter > 7) {
-                    regCounter = 0;
-                }
+        join(workers);
 
-                for (int j = 0x60; j <= 0x67; ++j) {
-                    if (i == j) {
-                        scaledIndex.set(j, "");
-                    }
-                }
-            }
-            if (i >= 0x80 && i <= 0xBF) {
-                scaledIndex.add(rd.get(regCounter) + "*4");
-                ++regSwap;
+        return Arrays.asList(decodedSections);
+    }
 
-                if (regSwap > 7) {
-                    ++regCounter;
-                    regSwap = 0;
-                }
-                if (regCounter > 7) {
-                    regCounter = 0;
-                }
+    /**
+     * Decodes section with linear sweep split into chunks decoded concurrently.
+     * <p>
+     * Every chunk except first starts from a guessed offset. Chunks are stitched in order: decoding continues
+     * sequentially from the end of previous chunk until it reaches instruction already decoded by the chunk,
+     * from there instruction streams are the same, so rest of the chunk is taken as it is.
+     * Result is identical to {@link #decode(ByteBuffer, PEFile.Code.SectionTable, int)}.
+     *
+     * @param maxChunks largest number of chunks, sections shorter than two minimal chunks or decoded without
+     *                  executor are decoded sequentially
+     */
+    public DecodedSection decode(ByteBuffer machineCode, PEFile.Code.SectionTable codeTable, int imageBase, Executor executor, int maxChunks) {
+        int size = codeTable.getMisc();
+        int chunks = Math.min(maxChunks, size / MIN_CHUNK_SIZE);
+        if (chunks < 2 || executor == null) {
+            return decode(machineCode, codeTable, imageBase);
+        }
 
-                for (int j = 0xA0; j <= 0xA7; ++j) {
-                    if (i == j) {
-                        scaledIndex.set(j, "");
-                    }
-                }
-            }
-            if (i >= 0xC0 && i <= 0xFF) {
-                scaledIndex.add(rd.get(regCounter) + "*8");
-                ++regSwap;
+        ByteBuffer code = machineCode.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int base = imageBase + codeTable.getVirtualAdress();
 
-                if (regSwap > 7) {
-                    ++regCounter;
-                    regSwap = 0;
-                }
-                if (regCounter > 7) {
-                    regCounter = 0;
+        int[] starts = new int[chunks + 1];
+        for (int i = 0; i <= chunks; ++i) {
+            starts[i] = (int) ((long) size * i / chunks);
+        }
+
+        Chunk[] decodedChunks = new Chunk[chunks];
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[chunks];
+        for (int i = 0; i < chunks; ++i) {
+            int chunk = i;
+            workers[i] = CompletableFuture.runAsync(() -> decodedChunks[chunk] = sweep(code, base, starts[chunk], starts[chunk + 1]), executor);
+        }
+
+        join(workers);
+
+        DecodedSection section = new DecodedSection(this, code, base, size / 3);
+
+        int[] decoded = new int[3];
+        int p = 0;
+
+        for (int i = 0; i < chunks; ++i) {
+            Chunk chunk = decodedChunks[i];
+            DecodedSection instructions = chunk.instructions;
+            int j = 0;
+
+            while (p < starts[i + 1]) {
+                while (j < instructions.getInstructionCount() && instructions.getAddress(j) - base < p) {
+                    ++j;
                 }
 
-                for (int j = 0xE0; j <= 0xE7; ++j) {
-                    if (i == j) {
-                        scaledIndex.set(j, "");
+                if (j < instructions.getInstructionCount() && instructions.getAddress(j) - base == p) {
+                    // Synchronized with chunk
+                    for (; j < instructions.getInstructionCount(); ++j) {
+                        append(section, code, instructions.getAddress(j) - base, base, instructions.getLength(j), instructions.getPattern(j), instructions.getPrefixes(j), decoded);
                     }
+                    p = chunk.end;
+                    continue;
                 }
+
+                int length = decodeInstruction(code, p, decoded);
+                append(section, code, p, base, length, decoded[DECODED_PATTERN], decoded[DECODED_PREFIXES], decoded);
+                p += length;
             }
         }
 
-        regCounter = 0;
-        sibr32 = new ArrayList<>();
-        for (int i = 0; i <= 0xFF; ++i) {
-            sibr32.add(rd.get(regCounter));
-            ++regCounter;
+        return section;
+    }
+
+    // Chunk of section decoded from guessed start
+    private static class Chunk {
+        private DecodedSection instructions;
+        // Offset after last decoded instruction, offset of instruction which couldn't be decoded when chunk stopped early
+        private int end;
+    }
+
+    // Instructions starting in [start, end), unknown opcodes are kept with pattern -1 and not logged
+    private Chunk sweep(ByteBuffer code, int base, int start, int end) {
+        Chunk chunk = new Chunk();
+        chunk.instructions = new DecodedSection(this, code, base, (end - start) / 3);
 
-            if (regCounter > 7) {
-                regCounter = 0;
+        int[] decoded = new int[3];
+        int p = start;
+
+        try {
+            while (p < end) {
+                int length = decodeInstruction(code, p, decoded);
+                chunk.instructions.append(p + base, length, decoded[DECODED_PATTERN], decoded[DECODED_PREFIXES]);
+                p += length;
             }
+        } catch (RuntimeException e) {
+            // Stream starting from guessed offset may run out of code, real stream fails again while stitching
         }
 
-        List<String> sregS = new ArrayList<>();
-        sregS.add("ES");
-        sregS.add("CS");
-        sregS.add("SS");
-        sregS.add("DS");
-        sregS.add("FS");
-        sregS.add("GS");
-        sregS.add("");
-        sregS.add("");
-
-        regCounter = 0;
-        regSwap = 0;
-        sreg = new ArrayList<>();
-        for (int i = 0; i <= 0xFF; ++i) {
-            sreg.add(sregS.get(regCounter));
+        chunk.end = p;
+        return chunk;
+    }
+
+    private void append(DecodedSection section, ByteBuffer code, int p, int base, int length, int instr, int prefixes, int[] decoded) {
+        if (instr < 0) {
+            decodeInstruction(code, p, decoded);
+            logUnknownOpcode(code, p, base, decoded);
+        } else {
+            section.append(p + base, length, instr, prefixes);
+        }
+    }
 
-            ++regSwap;
-            if (regSwap > 7) {
-                ++regCounter;
-                regSwap = 0;
+    private static void join(CompletableFuture<?>[] workers) {
+        try {
+            CompletableFuture.allOf(workers).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
-            if (regCounter > 7) {
-                regCounter = 0;
+            throw e;
+        }
+    }
+
+    public DecodedSection decode(ByteBuffer machineCode, PEFile.Code.SectionTable codeTable, int imageBase) {
+        return decode(machineCode, codeTable, imageBase, 0, codeTable.getMisc());
+    }
+
+    /**
+     * Linear sweep of instructions starting in [start, end) of section.
+     * Result is part of full sweep when start is boundary of instruction found by full sweep.
+     */
+    public DecodedSection decode(ByteBuffer machineCode, PEFile.Code.SectionTable codeTable, int imageBase, int start, int end) {
+        ByteBuffer code = machineCode.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int base = imageBase + codeTable.getVirtualAdress();
+
+        DecodedSection section = new DecodedSection(this, code, base, Math.max(end - start, 0) / 3);
+
+        int[] decoded = new int[3];
+        int p = start;
+
+        while (p < end) {
+            int length = decodeInstruction(code, p, decoded);
+            int instr = decoded[DECODED_PATTERN];
+
+            if (instr < 0) {
+                logUnknownOpcode(code, p, base, decoded);
+                p += length;
+
+                continue;
             }
+
+            section.append(p + base, length, instr, decoded[DECODED_PREFIXES]);
+
+            p += length;
         }
+
+        return section;
     }
 
-    public List<List<InterpretedInstruction>> interpret(List<List<Byte>> machineCode, List<PEFile.Code.SectionTable> codeTables, int imageBase) {
-        List<List<InterpretedInstruction>> interpretedInstructions = new ArrayList<>();
+    private static void logUnknownOpcode(ByteBuffer code, int p, int base, int[] decoded) {
+        String whichInstrSet;
+        if ((decoded[DECODED_PREFIXES] >> MAP_SHIFT & 1) == OpcodeTable.ONE_BYTE) {
+            whichInstrSet = "One Byte";
+        } else {
+            whichInstrSet = "Two Byte";
+        }
 
-        for (int l = 0; l < machineCode.size(); ++l) {
-            List<Byte> list = machineCode.get(l);
+        logger.error(whichInstrSet + ": " + HexFormatter.dwordHex(p + base) + " " + HexFormatter.byteHex(code.get(p)) + " " + HexFormatter.byteHex(decoded[DECODED_OPCODE]));
+    }
 
-            int p = 0;
+    /**
+     * Finds boundaries of instructions in section without rendering them.
+     * Bytes with unknown opcode are skipped like in {@link #decode}, but they are not logged.
+     * Instruction running out of section ends the scan.
+     */
+    public InstructionBoundaries scan(ByteBuffer machineCode, PEFile.Code.SectionTable codeTable) {
+        ByteBuffer code = machineCode.slice().order(ByteOrder.LITTLE_ENDIAN);
 
-            List<InterpretedInstruction> interpretedInstructionList = new ArrayList<>();
-            interpretedInstructions.add(interpretedInstructionList);
-
-            while (p < codeTables.get(l).getMisc()) {
-                int b = list.get(p) & 0xFF;
-
-                int pf = 0;
-
-                List<List<InstructionPatternParser.InstructionPattern>> instructions;
-                int priOpcodeSize = 0;
-                int length = 0;
-                String mnemoAddition = "";
-                String segmentOverridePrefix = "";
-
-                // Checking for prefixes
-                int pfTmp;
-                do {
-                    pfTmp = pf;
-                    if (b == 0xF2) {
-                        int tmpB = list.get(p + 1 + pf) & 0xFF;
-                        if (tmpB == 0xA6 || tmpB == 0xA7 || tmpB == 0xAE || tmpB == 0xAF) {
-                        } else {
-                            b = tmpB;
-                            priOpcodeSize += 1;
-                            length += 1;
-                            mnemoAddition = "BND";
-                            pf += 1;
-                        }
-                    } else if (b == 0xF3) {
-                        b = list.get(p + 1 + pf) & 0xFF;
-                        priOpcodeSize += 1;
-                        length += 1;
-                        mnemoAddition = "REP";
-                        pf += 1;
-                    } else if (b == 0xF0) {
-                        b = list.get(p + 1 + pf) & 0xFF;
-                        priOpcodeSize += 1;
-                        length += 1;
-                        mnemoAddition = "LOCK";
-                        pf += 1;
-                    } else if (b == 0x66) {
-                        b = list.get(p + 1 + pf) & 0xFF;
-                        priOpcodeSize += 1;
-                        length += 1;
-                        mnemoAddition = "data16";
-                        pf += 1;
-                    } else if (b == 0x67) {
-                        b = list.get(p + 1 + pf) & 0xFF;
-                        priOpcodeSize += 1;
-                        length += 1;
-                        mnemoAddition = "addr16";
-                        pf += 1;
-                    } else if (b == 0x2E) {
-                        b = list.get(p + 1 + pf) & 0xFF;
-                        priOpcodeSize += 1;
-                        length += 1;
-                        segmentOverridePrefix = "CS";
-                        pf += 1;
-                    } else if (b == 0x36) {
-                        b = list.get(p + 1 + pf) & 0xFF;
-                        priOpcodeSize += 1;
-                        length += 1;
-                        segmentOverridePrefix = "SS";
-                        pf += 1;
-                    } else if (b == 0x3E) {
-                        b = list.get(p + 1 + pf) & 0xFF;
-                        priOpcodeSize += 1;
-                        length += 1;
-                        segmentOverridePrefix = "DS";
-                        pf += 1;
-                    } else if (b == 0x26) {
-                        b = list.get(p + 1 + pf) & 0xFF;
-                        priOpcodeSize += 1;
-                        length += 1;
-                        segmentOverridePrefix = "ES";
-                        pf += 1;
-                    } else if (b == 0x64) {
-                        b = list.get(p + 1 + pf) & 0xFF;
-                        priOpcodeSize += 1;
-                        length += 1;
-                        segmentOverridePrefix = "FS";
-                        pf += 1;
-                    } else if (b == 0x65) {
-                        b = list.get(p + 1 + pf) & 0xFF;
-                        priOpcodeSize += 1;
-                        length += 1;
-                        segmentOverridePrefix = "GS";
-                        pf += 1;
-                    }
-                } while (pfTmp != pf);
+        InstructionBoundaries boundaries = new InstructionBoundaries(Math.max(codeTable.getMisc(), 0) / 3);
 
-                // Checking for instruction type
-                if (b == 0x0F) {
-                    b = list.get(p + 1) & 0xFF;
-                    if (b == 0x0F) b = list.get(p + 2) & 0xFF;
+        int[] decoded = new int[3];
+        int p = 0;
 
-                    instructions = twoByteInstructions;
-                    priOpcodeSize += 2;
-                } else {
-                    instructions = oneByteInstructions;
-                    priOpcodeSize += 1;
+        try {
+            while (p < codeTable.getMisc()) {
+                int length = decodeInstruction(code, p, decoded);
+
+                if (decoded[DECODED_PATTERN] >= 0) {
+                    boundaries.append(p, length);
                 }
 
-                InstructionPatternParser.InstructionPattern instr;
+                p += length;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // Boundaries before the cut-off instruction are kept
+        }
 
-                if (instructions.get(b).size() > 0) {
-                    instr = instructions.get(b).get(0);
-                }
-                else {
-                    String whichInstrSet;
-                    if (instructions.equals(oneByteInstructions)) {
-                        whichInstrSet = "One Byte";
-                    } else {
-                        whichInstrSet = "Two Byte";
-                    }
+        return boundaries;
+    }
 
-                    logger.error(whichInstrSet + ": " + String.format("%08X ", p + imageBase + codeTables.get(l).getVirtualAdress()) + String.format("%02X ", list.get(p)) + String.format("%02X", b));
-                    p += 1;
+    /**
+     * Decodes instruction starting at p, shared by {@link #decode} and {@link #scan}.
+     *
+     * @param decoded receives pattern id (-1 for unknown opcode), packed prefixes and opcode byte
+     * @return length of instruction, 1 for unknown opcode
+     */
+    int decodeInstruction(ByteBuffer code, int p, int[] decoded) {
+        return instructionDecoder.decodeInstruction(code, p, decoded);
+    }
 
-                    continue;
-                }
+    /**
+     * @return offset of rel8 or rel32 branch target, in the same coordinates as p, or NO_TARGET
+     * when instruction has no relative operand or it is cut off by the end of code
+     */
+    int getBranchTarget(ByteBuffer code, int p, int length, int instr, int prefixes) {
+        int displacement = p + (prefixes >>> PRIMARY_OPCODE_SIZE_SHIFT);
+        int size = opcodeTable.getRelativeSize(instr);
+        if (displacement + size > code.limit()) {
+            return NO_TARGET;
+        }
 
-                // Trying to get second byte in one-byte instr or third byte in two-byte instr
-                if (p + priOpcodeSize < list.size()) {
-                    int b2 = list.get(p + priOpcodeSize) & 0xFF;
+        switch (size) {
+            case 1:
+                return p + length + code.get(displacement);
+            case 4:
+                return p + length + code.getInt(displacement);
+            default:
+                return NO_TARGET;
+        }
+    }
 
-                    if (instr.getOpcode().contains("/r")) {
-                        length += slashRSize.get(b2);
+    /**
+     * @return address of memory operand of CALL [disp32] or JMP [disp32], e.g. slot of import address table,
+     * or NO_TARGET for other instructions
+     */
+    int getIndirectTarget(ByteBuffer code, int p, int instr, int prefixes) {
+        int priOpcodeSize = prefixes >>> PRIMARY_OPCODE_SIZE_SHIFT;
+        int addition = prefixes & ADDITION_MASK;
+        if (instr < 0 || (prefixes >> MAP_SHIFT & 1) != OpcodeTable.ONE_BYTE || addition == 4 || addition == 5
+                || p + priOpcodeSize + 5 > code.limit() || (code.get(p + priOpcodeSize - 1) & 0xFF) != 0xFF) {
+            return NO_TARGET;
+        }
 
-                        boolean sibByte = false;
-                        for (int j = 0x04; j <= 0x3C; j += 8) {
-                            if (b2 == j) {
-                                sibByte = true;
-                            }
-                        }
+        // FF /2 is near CALL and FF /4 near JMP, ModR/M without base is followed by disp32
+        int modRm = code.get(p + priOpcodeSize) & 0xFF;
+        int reg = modRmTable.getReg(modRm);
+        if ((reg != 2 && reg != 4) || modRmTable.hasSib(modRm) || !modRmTable.hasNoBase(modRm)) {
+            return NO_TARGET;
+        }
 
-                        // Checking for disp32 following SIB Byte
-                        if (sibByte) {
-                            int b3 = list.get(p + priOpcodeSize + 1) & 0xFF;
-                            for (int j = 0x05; j <= 0xFD; j += 8) {
-                                if (b3 == j) {
-                                    length += 4;
-                                }
-                            }
-                        }
-                    } else if (instr.getOpcode().matches("[ -~]*[/][0-9][ -~]*")) {
-                        String digit = slashDigit.get(b2);
-                        for (int i = 0; i < instructions.get(b).size(); ++i) {
-                            InstructionPatternParser.InstructionPattern instruction = instructions.get(b).get(i);
-                            if (instruction.getOpcode().contains(digit)) {
-                                instr = instruction;
-                            }
-                        }
-                        length += slashRSize.get(b2);
+        return code.getInt(p + priOpcodeSize + 1);
+    }
 
-                        boolean sibByte = false;
-                        for (int j = 0x04; j <= 0x3C; j += 8) {
-                            if (b2 == j) {
-                                sibByte = true;
-                            }
-                        }
+    OpcodeTable getOpcodeTable() {
+        return opcodeTable;
+    }
 
-                        // Checking for disp32 following SIB Byte
-                        if (sibByte) {
-                            int b3 = list.get(p + priOpcodeSize + 1) & 0xFF;
-                            for (int j = 0x05; j <= 0xFD; j += 8) {
-                                if (b3 == j) {
-                                    length += 4;
-                                }
-                            }
-                        }
-                    } else if (instr.getOpcode().contains("0F01")) {
-                        int thirdByte = list.get(p + 2) & 0xFF;
-
-                        if (thirdByte == 0xD0) {
-                            instr = instructions.get(0x01).get(0);
-                        } else if (thirdByte == 0xD1) {
-                            instr = instructions.get(0x01).get(1);
-                        } else {
-                            instr = instructions.get(0x01).get(2);
-                        }
-                    }
-                }
+    /**
+     * Renders instruction decoded by {@link #decode} to text.
+     */
+    InterpretedInstruction render(ByteBuffer code, int p, int addr, int length, int instr, int prefixes) {
+        RenderCache cache = renderCache;
+        if (cache == null) {
+            return renderInstruction(code, p, addr, length, instr, prefixes);
+        }
 
-                length += instr.getLength();
+        // Instructions cut off by the end of code aren't cached, their text depends on where code ends
+        int extent = renderExtent(code, p, length, instr, prefixes);
+        if (extent < 0 || p + extent > code.limit() || p + length > code.limit()) {
+            return renderInstruction(code, p, addr, length, instr, prefixes);
+        }
 
-                int addr = p + imageBase + codeTables.get(l).getVirtualAdress();
-                StringBuilder opcode = new StringBuilder();
+        // Relative displacement is left out of the key only when it is the sole operand read from code
+        int steps = opcodeTable.getSteps(instr);
+        int relativeStart = prefixes >>> PRIMARY_OPCODE_SIZE_SHIFT;
+        int relativeSize = steps == OpcodeTable.STEP_CB ? 1 : steps == OpcodeTable.STEP_CD ? 4 : 0;
 
-                if (!(p + length > list.size())) {
-                    for (int i = p; i < p + length; ++i) {
-                        opcode.append(String.format("%02X", list.get(i)));
-                    }
-                }
+        InterpretedInstruction cached = cache.get(code, p, extent, relativeStart, relativeSize, instr, prefixes, addr);
+        if (cached != null) {
+            return cached;
+        }
+
+        InterpretedInstruction rendered = renderInstruction(code, p, addr, length, instr, prefixes);
 
-                String[] operands = instr.getOperands().split(",");
-                String[] tmp = new String[3];
-                if (operands.length == 3) {
-                    tmp[0] = operands[0];
-                    tmp[1] = operands[1];
-                    tmp[2] = operands[2];
-                } else if (operands.length == 2) {
-                    tmp[0] = operands[0];
-                    tmp[1] = operands[1];
-                    tmp[2] = "";
-                } else if (operands.length == 1) {
-                    tmp[0] = operands[0];
-                    tmp[1] = "";
-                    tmp[2] = "";
+        int relativeOperands = 0;
+        if (relativeSize != 0) {
+            OperandKind relativeKind = relativeSize == 1 ? OperandKind.REL8 : OperandKind.REL32;
+            OperandKind[] kinds = opcodeTable.getOperandKinds(instr);
+            for (int j = 0; j < kinds.length; ++j) {
+                if (kinds[j] == relativeKind) {
+                    relativeOperands |= 1 << j;
                 }
-                operands = tmp;
+            }
+        }
+        cache.put(code, p, extent, relativeStart, relativeSize, instr, prefixes, rendered, relativeOperands);
+
+        return rendered;
+    }
+
+    // Number of bytes from p read by renderInstruction, -1 when SIB byte lies beyond the end of code
+    private int renderExtent(ByteBuffer code, int p, int length, int instr, int prefixes) {
+        int priOpcodeSize = prefixes >>> PRIMARY_OPCODE_SIZE_SHIFT;
+        int extent = Math.max(length, priOpcodeSize);
+
+        int slashRLength = 0;
+        if (opcodeTable.hasModRm(instr)) {
+            if (p + priOpcodeSize >= code.limit()) return -1;
+            slashRLength = modRmTable.getLength(code.get(p + priOpcodeSize) & 0xFF) + 1;
+        }
 
-                for (int i = 0; i < instr.getOpcode().length(); i += 2) {
-                    String opByte = instr.getOpcode().substring(i, i + 2);
-                    if (opByte.equals("+r")) {
-                        opByte = instr.getOpcode().substring(i, i + 3);
-                        i += 1;
+        for (int steps = opcodeTable.getSteps(instr); steps != 0; steps >>>= OpcodeTable.STEP_BITS) {
+            int end;
+            switch (steps & OpcodeTable.STEP_MASK) {
+                case OpcodeTable.STEP_CB:
+                    end = priOpcodeSize + 1;
+                    break;
+                case OpcodeTable.STEP_CD:
+                    end = priOpcodeSize + 4;
+                    break;
+                case OpcodeTable.STEP_MODRM: {
+                    if (p + priOpcodeSize >= code.limit()) return -1;
+
+                    int modRm = code.get(p + priOpcodeSize) & 0xFF;
+                    end = priOpcodeSize + 1 + modRmTable.getLength(modRm);
+                    if (modRmTable.hasSibDisplacement(modRm)) {
+                        if (p + priOpcodeSize + 1 >= code.limit()) return -1;
+                        if (modRmTable.hasDisp32Base(code.get(p + priOpcodeSize + 1) & 0xFF)) end += 4;
                     }
+                    break;
+                }
+                case OpcodeTable.STEP_IB:
+                case OpcodeTable.STEP_MB:
+                    end = priOpcodeSize + slashRLength + 1;
+                    break;
+                case OpcodeTable.STEP_IW:
+                    end = priOpcodeSize + slashRLength + 2;
+                    break;
+                case OpcodeTable.STEP_ID:
+                case OpcodeTable.STEP_MD:
+                    end = priOpcodeSize + slashRLength + 4;
+                    break;
+                default:
+                    continue;
+            }
+            extent = Math.max(extent, end);
+        }
 
-                    if (opByte.equals("cb")) {
-                        byte cb = list.get(p + priOpcodeSize);
+        return extent;
+    }
 
-                        for (int j = 0; j < operands.length; ++j) {
-                            if (operands[j].equals("rel8")) {
-                                operands[j] = String.format("%02X", cb);
-                            }
-                        }
-                    } else if (opByte.equals("cd")) {
-                        ByteBuffer byteBuffer = ByteBuffer.allocate(4);
-                        byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-                        for (int j = p + priOpcodeSize; j < p + priOpcodeSize + 4; ++j) {
-                            byteBuffer.put(list.get(j));
-                        }
-                        int cd = byteBuffer.getInt(0);
+    private InterpretedInstruction renderInstruction(ByteBuffer code, int p, int addr, int length, int instr, int prefixes) {
+        int priOpcodeSize = prefixes >>> PRIMARY_OPCODE_SIZE_SHIFT;
+        int segment = (prefixes >> SEGMENT_SHIFT) & SEGMENT_MASK;
+        boolean hasModRmByte = p + priOpcodeSize < code.limit();
 
-                        for (int j = 0; j < operands.length; ++j) {
-                            if (operands[j].equals("rel32")) {
-                                operands[j] = String.format("%08X", cd);
-                            }
+        StringBuilder opcode = new StringBuilder(length * 2);
+        // Operands with hex digits are written here and taken as one String each
+        StringBuilder text = new StringBuilder(32);
+
+        if (!(p + length > code.limit())) {
+            for (int i = p; i < p + length; ++i) {
+                HexFormatter.appendByte(opcode, code.get(i));
+            }
+        }
+
+        String[] operands = opcodeTable.getOperandTexts(instr).clone();
+        OperandKind[] kinds = opcodeTable.getOperandKinds(instr).clone();
+
+        int slashRLength = 0;
+        if (opcodeTable.hasModRm(instr) && hasModRmByte) {
+            slashRLength = modRmTable.getLength(code.get(p + priOpcodeSize) & 0xFF) + 1;
+        }
+
+        for (int steps = opcodeTable.getSteps(instr); steps != 0; steps >>>= OpcodeTable.STEP_BITS) {
+            switch (steps & OpcodeTable.STEP_MASK) {
+                case OpcodeTable.STEP_CB: {
+                    if (p + priOpcodeSize >= code.limit()) break;
+
+                    byte cb = code.get(p + priOpcodeSize);
+
+                    for (int j = 0; j < operands.length; ++j) {
+                        if (kinds[j] == OperandKind.REL8) {
+                            operands[j] = HexFormatter.byteHex(cb);
+                            kinds[j] = OperandKind.LITERAL;
                         }
                     }
+                    break;
+                }
+                case OpcodeTable.STEP_CD: {
+                    if (p + priOpcodeSize + 4 > code.limit()) break;
 
-                    if (opByte.equals("+rb")) {
-                        HexBinaryAdapter hexBinaryAdapter = new HexBinaryAdapter();
-                        byte base = hexBinaryAdapter.unmarshal(instr.getOpcode().substring(0, 2))[0];
-                        int rByte = list.get(p + priOpcodeSize - 1) - base;
+                    int cd = code.getInt(p + priOpcodeSize);
 
-                        for (int j = 0; j < operands.length; ++j) {
-                            if (operands[j].equals("reg8") || operands[j].equals("r8")) {
-                                operands[j] = rb.get(rByte);
-                            }
-                        }
-                    } else if (opByte.equals("+rw") || opByte.equals("+rd")) {
-                        HexBinaryAdapter hexBinaryAdapter = new HexBinaryAdapter();
-                        byte base = hexBinaryAdapter.unmarshal(instr.getOpcode().substring(0, 2))[0];
-                        int rByte = list.get(p + priOpcodeSize - 1) - base;
-
-                        for (int j = 0; j < operands.length; ++j) {
-                            if (operands[j].equals("r32") || operands[j].equals("reg32")) {
-                                operands[j] = rd.get(rByte);
-                            }
+                    for (int j = 0; j < operands.length; ++j) {
+                        if (kinds[j] == OperandKind.REL32) {
+                            operands[j] = takeText(HexFormatter.appendDword(text, cd));
+                            kinds[j] = OperandKind.LITERAL;
                         }
                     }
+                    break;
+                }
+                case OpcodeTable.STEP_RB: {
+                    int rByte = code.get(p + priOpcodeSize - 1) - opcodeTable.getRegisterBase(instr);
 
-                    if ((opByte.equals("/r") || opByte.matches("[ -~]*[/][0-9][ -~]*")) && p + priOpcodeSize < list.size()) {
-                        int slashRByte = list.get(p + priOpcodeSize) & 0xFF;
-
-                        for (int j = 0; j < operands.length; ++j) {
-                            if (operands[j].equals("r/m8")) {
-                                operands[j] = effectiveAddress.get(slashRByte);
-                                if (operands[j].contains("r")) {
-                                    operands[j] = rb.get(operands[j].toCharArray()[1] - '0');
-                                }
-                            } else if (operands[j].equals("r/m16")) {
-                                operands[j] = effectiveAddress.get(slashRByte);
-                                if (operands[j].contains("r")) {
-                                    operands[j] = rw.get(operands[j].toCharArray()[1] - '0');
-                                }
-                            } else if (operands[j].equals("r/m32")) {
-                                operands[j] = effectiveAddress.get(slashRByte);
-                                if (operands[j].contains("r")) {
-                                    operands[j] = rd.get(operands[j].toCharArray()[1] - '0');
-                                }
-                            } else if (operands[j].equals("r8")) {
-                                operands[j] = r8.get(slashRByte);
-                            } else if (operands[j].equals("r16")) {
-                                operands[j] = r16.get(slashRByte);
-                            } else if (operands[j].equals("r32")) {
-                                operands[j] = r32.get(slashRByte);
-                            }
+                    for (int j = 0; j < operands.length; ++j) {
+                        if (kinds[j] == OperandKind.REG8 || kinds[j] == OperandKind.R8) {
+                            operands[j] = rb.get(rByte);
+                            kinds[j] = OperandKind.LITERAL;
+                        }
+                    }
+                    break;
+                }
+                case OpcodeTable.STEP_RD: {
+                    int rByte = code.get(p + priOpcodeSize - 1) - opcodeTable.getRegisterBase(instr);
 
-                            if (operands[j].equals("disp8[--]")) {
-                                int sib = list.get(p + priOpcodeSize + 1) & 0xFF;
-                                String sibScaledIndex = scaledIndex.get(sib);
-
-                                int disp8 = list.get(p + priOpcodeSize + 2) & 0xFF;
-
-                                if (sibScaledIndex.equals("")) {
-                                    operands[j] = "[" + sibr32.get(sib) + " + " + String.format("%02X]", disp8);
-                                } else {
-                                    operands[j] = "[" + sibr32.get(sib) + " + " + scaledIndex.get(sib) + " + " + String.format("%02X]", disp8);
-                                }
-                            } else if (operands[j].contains("disp8[")) {
-                                String reg = operands[j].substring(6, 9);
-                                int disp8 = list.get(p + priOpcodeSize + 1) & 0xFF;
-                                operands[j] = "[" + reg + " + " + String.format("%02X]", disp8);
-                            }
+                    for (int j = 0; j < operands.length; ++j) {
+                        if (kinds[j] == OperandKind.R32 || kinds[j] == OperandKind.REG32) {
+                            operands[j] = rd.get(rByte);
+                            kinds[j] = OperandKind.LITERAL;
+                        }
+                    }
+                    break;
+                }
+                case OpcodeTable.STEP_MODRM: {
+                    if (!hasModRmByte) break;
 
-                            if (operands[j].equals("disp32[--]")) {
-                                int sib = list.get(p + priOpcodeSize + 1) & 0xFF;
-                                String sibScaledIndex = scaledIndex.get(sib);
-
-                                ByteBuffer byteBuffer = ByteBuffer.allocate(4);
-                                byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-                                for (int k = p + priOpcodeSize + 2; k < p + priOpcodeSize + 2 + 4; ++k) {
-                                    byteBuffer.put(list.get(k));
-                                }
-                                int disp32 = byteBuffer.getInt(0);
-
-                                if (sibScaledIndex.equals("")) {
-                                    operands[j] = "[" + sibr32.get(sib) + " + " + String.format("%08X]", disp32);
-                                } else {
-                                    operands[j] = "[" + sibr32.get(sib) + " + " + scaledIndex.get(sib) + " + " + String.format("%08X]", disp32);
-                                }
-                            } else if (operands[j].contains("disp32[")) {
-                                String reg = operands[j].substring(7, 10);
-
-                                ByteBuffer byteBuffer = ByteBuffer.allocate(4);
-                                byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-                                for (int k = p + priOpcodeSize + 1; k < p + priOpcodeSize + 1 + 4; ++k) {
-                                    byteBuffer.put(list.get(k));
-                                }
-                                int disp32 = byteBuffer.getInt(0);
-                                operands[j] = "[" + reg + " + " + String.format("%08X]", disp32);
-                            } else if (operands[j].contains("disp32")) {
-                                ByteBuffer byteBuffer = ByteBuffer.allocate(4);
-                                byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-                                for (int k = p + priOpcodeSize + 1; k < p + priOpcodeSize + 1 + 4; ++k) {
-                                    byteBuffer.put(list.get(k));
-                                }
-                                int disp32 = byteBuffer.getInt(0);
-                                operands[j] = String.format("%08X", disp32);
-                            }
+                    int reg = modRmTable.getReg(code.get(p + priOpcodeSize) & 0xFF);
 
-                            if (operands[j].contains("[--]")) {
-                                int sib = list.get(p + priOpcodeSize + 1) & 0xFF;
-                                String sibScaledIndex = scaledIndex.get(sib);
-
-                                boolean sibByte = false;
-                                for (int k = 0x04; k <= 0x3C; k += 8) {
-                                    if (slashRByte == k) {
-                                        sibByte = true;
-                                    }
-                                }
-
-                                boolean isDisp32 = false;
-                                // Checking for disp32 following SIB Byte
-                                if (sibByte) {
-                                    for (int k = 0x05; k <= 0xFD; k += 8) {
-                                        if (sib == k) {
-                                            isDisp32 = true;
-                                        }
-                                    }
-                                }
-
-                                if (sibScaledIndex.equals("")) {
-                                    operands[j] = "[" + sibr32.get(sib) + "]";
-                                } else {
-                                    operands[j] = "[" + sibr32.get(sib) + " + " + scaledIndex.get(sib) + "]";
-                                }
-
-                                if (isDisp32) {
-                                    ByteBuffer byteBuffer = ByteBuffer.allocate(4);
-                                    byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-                                    for (int k = p + priOpcodeSize + 2; k < p + priOpcodeSize + 2 + 4; ++k) {
-                                        byteBuffer.put(list.get(k));
-                                    }
-                                    int disp32 = byteBuffer.getInt(0);
-
-                                    operands[j] = "[" + scaledIndex.get(sib)  + " + " + String.format("%08X]", disp32);
-                                }
-                            }
+                    for (int j = 0; j < operands.length; ++j) {
+                        switch (kinds[j]) {
+                            case RM8:
+                            case RM16:
+                            case RM32: {
+                                String address = effectiveAddress(code, p + priOpcodeSize, kinds[j], text);
+                                if (address == null) continue;
 
-                            if (operands[j].contains("Sreg")) {
-                                operands[j] = sreg.get(slashRByte);
+                                operands[j] = address;
+                                break;
                             }
+                            case R8:
+                                operands[j] = rb.get(reg);
+                                break;
+                            case R16:
+                                operands[j] = rw.get(reg);
+                                break;
+                            case R32:
+                                operands[j] = rd.get(reg);
+                                break;
+                            case SREG:
+                                operands[j] = sreg.get(reg);
+                                break;
+                            default:
+                                continue;
                         }
+                        kinds[j] = OperandKind.LITERAL;
                     }
+                    break;
+                }
+                case OpcodeTable.STEP_IB: {
+                    if (p + priOpcodeSize + slashRLength >= code.limit()) break;
 
-                    int slashRLength = 0;
-                    if ((instr.getOpcode().contains("/r") || instr.getOpcode().matches("[ -~]*[/][0-9][ -~]*")) && p + priOpcodeSize < list.size()) {
-                        slashRLength = slashRSize.get(list.get(p + priOpcodeSize) & 0xFF) + 1;
+                    int imm8Byte = code.get(p + priOpcodeSize + slashRLength) & 0xFF;
+
+                    for (int j = 0; j < operands.length; ++j) {
+                        if (kinds[j] == OperandKind.IMM8) {
+                            operands[j] = HexFormatter.byteHex(imm8Byte);
+                            kinds[j] = OperandKind.LITERAL;
+                        }
                     }
+                    break;
+                }
+                case OpcodeTable.STEP_IW: {
+                    if (p + priOpcodeSize + slashRLength + 2 > code.limit()) break;
 
-                    if (opByte.equals("ib") && p + priOpcodeSize + slashRLength < list.size()) {
-                        int imm8Byte = list.get(p + priOpcodeSize + slashRLength) & 0xFF;
+                    int iw = code.getShort(p + priOpcodeSize + slashRLength);
 
-                        for (int j = 0; j < operands.length; ++j) {
-                            if (operands[j].equals("imm8")) {
-                                operands[j] = String.format("%02X", imm8Byte);
-                            }
+                    for (int j = 0; j < operands.length; ++j) {
+                        if (kinds[j] == OperandKind.IMM16) {
+                            operands[j] = takeText(HexFormatter.appendWord(text, iw));
+                            kinds[j] = OperandKind.LITERAL;
                         }
-                    } else if (opByte.equals("iw")) {
-                        ByteBuffer byteBuffer = ByteBuffer.allocate(2);
-                        byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-                        for (int j = p + priOpcodeSize + slashRLength; j < p + priOpcodeSize + slashRLength + 2; ++j) {
-                            byteBuffer.put(list.get(j));
-                        }
-                        int iw = byteBuffer.getShort(0);
+                    }
+                    break;
+                }
+                case OpcodeTable.STEP_ID: {
+                    if (p + priOpcodeSize + slashRLength + 4 > code.limit()) break;
 
-                        for (int j = 0; j < operands.length; ++j) {
-                            if (operands[j].equals("imm16")) {
-                                operands[j] = String.format("%04X", iw);
-                            }
-                        }
-                    } else if (opByte.equals("id")) {
-                        ByteBuffer byteBuffer = ByteBuffer.allocate(4);
-                        byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-                        for (int j = p + priOpcodeSize + slashRLength; j < p + priOpcodeSize + slashRLength + 4; ++j) {
-                            byteBuffer.put(list.get(j));
-                        }
-                        int id = byteBuffer.getInt(0);
+                    int id = code.getInt(p + priOpcodeSize + slashRLength);
 
-                        for (int j = 0; j < operands.length; ++j) {
-                            if (operands[j].equals("imm32")) {
-                                operands[j] = String.format("%08X", id);
-                            }
+                    for (int j = 0; j < operands.length; ++j) {
+                        if (kinds[j] == OperandKind.IMM32) {
+                            operands[j] = takeText(HexFormatter.appendDword(text, id));
+                            kinds[j] = OperandKind.LITERAL;
                         }
                     }
+                    break;
+                }
+                case OpcodeTable.STEP_MB: {
+                    if (p + priOpcodeSize + slashRLength >= code.limit()) break;
 
-                    if (opByte.equals("mb") && p + priOpcodeSize + slashRLength < list.size()) {
-                        int moffs8 = list.get(p + priOpcodeSize + slashRLength) & 0xFF;
+                    int moffs8 = code.get(p + priOpcodeSize + slashRLength) & 0xFF;
 
-                        for (int j = 0; j < operands.length; ++j) {
-                            if (operands[j].equals("moffs8")) {
-                                if (segmentOverridePrefix.length() == 0) segmentOverridePrefix = "DS";
-                                operands[j] = segmentOverridePrefix + ":" + String.format("%02X", moffs8);
-                            }
+                    for (int j = 0; j < operands.length; ++j) {
+                        if (kinds[j] == OperandKind.MOFFS8) {
+                            if (segment == 0) segment = DS;
+                            operands[j] = takeText(HexFormatter.appendByte(text.append(SEGMENT_OVERRIDE_PREFIXES[segment]).append(':'), moffs8));
+                            kinds[j] = OperandKind.LITERAL;
                         }
-                    } else if (opByte.equals("md")) {
-                        ByteBuffer byteBuffer = ByteBuffer.allocate(4);
-                        byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-                        for (int j = p + priOpcodeSize + slashRLength; j < p + priOpcodeSize + slashRLength + 4; ++j) {
-                            byteBuffer.put(list.get(j));
-                        }
-                        int md = byteBuffer.getInt(0);
+                    }
+                    break;
+                }
+                case OpcodeTable.STEP_MD: {
+                    if (p + priOpcodeSize + slashRLength + 4 > code.limit()) break;
 
-                        for (int j = 0; j < operands.length; ++j) {
-                            if (operands[j].equals("moffs32")) {
-                                if (segmentOverridePrefix.length() == 0) segmentOverridePrefix = "DS";
-                                operands[j] = segmentOverridePrefix + ":" + String.format("%08X", md);
-                            }
+                    int md = code.getInt(p + priOpcodeSize + slashRLength);
+
+                    for (int j = 0; j < operands.length; ++j) {
+                        if (kinds[j] == OperandKind.MOFFS32) {
+                            if (segment == 0) segment = DS;
+                            operands[j] = takeText(HexFormatter.appendDword(text.append(SEGMENT_OVERRIDE_PREFIXES[segment]).append(':'), md));
+                            kinds[j] = OperandKind.LITERAL;
                         }
                     }
+                    break;
                 }
+            }
+        }
 
-                String mnemo = mnemoAddition;
+        String mnemo = stringPool.mnemonic(instr, prefixes & ADDITION_MASK, segment);
 
-                if (!operands[0].contains(":") && !operands[1].contains(":") && !operands[2].contains(":") && !instr.getOperands().contains("moffs")) {
-                    mnemo = mnemo + " " + segmentOverridePrefix;
-                }
-                mnemo = mnemo + " " + instr.getMnemo();
+        return new InterpretedInstruction(addr, opcode.toString(), mnemo, operands[0], operands[1], operands[2]);
+    }
 
-                interpretedInstructionList.add(new InterpretedInstruction(addr, opcode.toString(), mnemo, operands[0], operands[1], operands[2]));
+    // Text in builder as String, builder is emptied for next operand
+    private static String takeText(StringBuilder text) {
+        String result = text.toString();
+        text.setLength(0);
+        return result;
+    }
 
-                p += length;
+    // Operand encoded by ModR/M byte at given position, with SIB byte and displacement when present,
+    // null when the instruction is cut off by the end of code
+    private String effectiveAddress(ByteBuffer code, int pos, OperandKind kind, StringBuilder text) {
+        int modRm = code.get(pos) & 0xFF;
+        int rm = modRmTable.getRm(modRm);
+
+        if (modRmTable.isRegisterDirect(modRm)) {
+            if (kind == OperandKind.RM8) {
+                return rb.get(rm);
+            } else if (kind == OperandKind.RM16) {
+                return rw.get(rm);
+            } else {
+                return rd.get(rm);
             }
         }
 
-        return interpretedInstructions;
+        int displacementLength = modRmTable.getDisplacementLength(modRm);
+
+        if (modRmTable.hasSib(modRm)) {
+            if (pos + 1 >= code.limit()) return null;
+
+            int sib = code.get(pos + 1) & 0xFF;
+
+            if (modRmTable.hasSibDisplacement(modRm) && modRmTable.hasDisp32Base(sib)) {
+                if (pos + 6 > code.limit()) return null;
+
+                text.append('[').append(stringPool.scaledIndex(sib)).append(" + ");
+                return takeText(HexFormatter.appendDword(text, code.getInt(pos + 2)).append(']'));
+            }
+
+            if (pos + 2 + displacementLength > code.limit()) return null;
+
+            if (displacementLength == 1) {
+                text.append('[').append(stringPool.sibAddress(sib)).append(" + ");
+                return takeText(HexFormatter.appendByte(text, code.get(pos + 2)).append(']'));
+            } else if (displacementLength == 4) {
+                text.append('[').append(stringPool.sibAddress(sib)).append(" + ");
+                return takeText(HexFormatter.appendDword(text, code.getInt(pos + 2)).append(']'));
+            }
+            return stringPool.sibIndirect(sib);
+        } else if (modRmTable.hasNoBase(modRm)) {
+            if (pos + 5 > code.limit()) return null;
+
+            return takeText(HexFormatter.appendDword(text, code.getInt(pos + 1)));
+        }
+
+        if (pos + 1 + displacementLength > code.limit()) return null;
+
+        if (displacementLength == 1) {
+            return stringPool.displaced(rm, code.get(pos + 1));
+        } else if (displacementLength == 4) {
+            text.append('[').append(rd.get(rm)).append(" + ");
+            return takeText(HexFormatter.appendDword(text, code.getInt(pos + 1)).append(']'));
+        }
+
+        return stringPool.registerIndirect(rm);
     }
 }
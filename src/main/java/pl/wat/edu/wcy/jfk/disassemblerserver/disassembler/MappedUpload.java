@@ -0,0 +1,63 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Upload spooled to a temporary file and mapped, so it is parsed and hashed in place instead of being
+ * copied through a stream.
+ * <p>
+ * File is deleted on close, sections sliced from the mapping stay readable until they are collected.
+ */
+public class MappedUpload implements Closeable {
+    private final Path path;
+    @Getter
+    private final ByteBuffer buffer;
+
+    /**
+     * Writes upload to a file, e.g. by moving part of multipart request already stored on disk.
+     */
+    public interface Spool {
+        void writeTo(File file) throws IOException;
+    }
+
+    public MappedUpload(Spool spool) throws IOException {
+        path = Files.createTempFile("upload", ".bin");
+
+        try {
+            spool.writeTo(path.toFile());
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return SHA-256 of the whole upload, in the same form as ids of stored binaries
+     */
+    public String digest() {
+        return HashingInputStream.sha256(buffer);
+    }
+
+    @Override
+    public void close() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // File still mapped can't be deleted on some systems
+            path.toFile().deleteOnExit();
+        }
+    }
+}
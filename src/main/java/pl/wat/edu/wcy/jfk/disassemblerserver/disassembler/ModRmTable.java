@@ -0,0 +1,142 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+/**
+ * Descriptors of all 256 ModR/M and SIB bytes in 32-bit addressing mode.
+ * <p>
+ * Every byte is decoded once, so interpreter reads length, displacement and registers of operand
+ * with single array lookup instead of comparing byte against lists of values.
+ */
+public class ModRmTable {
+    // ModR/M descriptor: mod, reg and r/m fields
+    private static final int RM_MASK = 0x7;
+    private static final int REG_SHIFT = 3;
+    private static final int REG_MASK = 0x7;
+    private static final int MOD_SHIFT = 6;
+    private static final int MOD_MASK = 0x3;
+    // Number of bytes following ModR/M byte, without disp32 of SIB with no base
+    private static final int LENGTH_SHIFT = 8;
+    private static final int LENGTH_MASK = 0x7;
+    private static final int DISPLACEMENT_SHIFT = 11;
+    private static final int DISPLACEMENT_MASK = 0x7;
+    private static final int HAS_SIB = 0x4000;
+    private static final int REGISTER_DIRECT = 0x8000;
+    // mod 00 with r/m 101, only disp32 without base register
+    private static final int NO_BASE = 0x10000;
+    // mod 00 with r/m 100, SIB byte with base 101 is followed by disp32
+    private static final int SIB_DISP32 = 0x20000;
+
+    // SIB descriptor: base, index and scale fields
+    private static final int BASE_MASK = 0x7;
+    private static final int INDEX_SHIFT = 3;
+    private static final int INDEX_MASK = 0x7;
+    private static final int SCALE_SHIFT = 6;
+    private static final int SCALE_MASK = 0x3;
+    // Index 100, no index register
+    private static final int NO_INDEX = 0x100;
+    // Base 101, disp32 instead of base register when mod is 00
+    private static final int DISP32_BASE = 0x200;
+
+    private final int[] modRm = new int[256];
+    private final int[] sib = new int[256];
+
+    public ModRmTable() {
+        for (int b = 0; b <= 0xFF; ++b) {
+            int mod = b >> 6;
+            int rm = b & 7;
+
+            int descriptor = b;
+            int displacement = 0;
+
+            if (mod == 3) {
+                descriptor |= REGISTER_DIRECT;
+            } else {
+                if (rm == 4) {
+                    descriptor |= mod == 0 ? HAS_SIB | SIB_DISP32 : HAS_SIB;
+                }
+
+                if (mod == 1) {
+                    displacement = 1;
+                } else if (mod == 2) {
+                    displacement = 4;
+                } else if (rm == 5) {
+                    displacement = 4;
+                    descriptor |= NO_BASE;
+                }
+            }
+
+            int length = displacement + ((descriptor & HAS_SIB) != 0 ? 1 : 0);
+            modRm[b] = descriptor | length << LENGTH_SHIFT | displacement << DISPLACEMENT_SHIFT;
+
+            int sibDescriptor = b;
+            if (((b >> 3) & 7) == 4) {
+                sibDescriptor |= NO_INDEX;
+            }
+            if ((b & 7) == 5) {
+                sibDescriptor |= DISP32_BASE;
+            }
+            sib[b] = sibDescriptor;
+        }
+    }
+
+    public int getMod(int modRmByte) {
+        return (modRm[modRmByte] >> MOD_SHIFT) & MOD_MASK;
+    }
+
+    public int getReg(int modRmByte) {
+        return (modRm[modRmByte] >> REG_SHIFT) & REG_MASK;
+    }
+
+    public int getRm(int modRmByte) {
+        return modRm[modRmByte] & RM_MASK;
+    }
+
+    /**
+     * @return number of bytes following ModR/M byte (SIB and displacement), without disp32 selected by SIB byte
+     */
+    public int getLength(int modRmByte) {
+        return (modRm[modRmByte] >> LENGTH_SHIFT) & LENGTH_MASK;
+    }
+
+    public int getDisplacementLength(int modRmByte) {
+        return (modRm[modRmByte] >> DISPLACEMENT_SHIFT) & DISPLACEMENT_MASK;
+    }
+
+    public boolean hasSib(int modRmByte) {
+        return (modRm[modRmByte] & HAS_SIB) != 0;
+    }
+
+    public boolean isRegisterDirect(int modRmByte) {
+        return (modRm[modRmByte] & REGISTER_DIRECT) != 0;
+    }
+
+    public boolean hasNoBase(int modRmByte) {
+        return (modRm[modRmByte] & NO_BASE) != 0;
+    }
+
+    /**
+     * @return true when SIB byte following ModR/M byte can select disp32 instead of base register
+     */
+    public boolean hasSibDisplacement(int modRmByte) {
+        return (modRm[modRmByte] & SIB_DISP32) != 0;
+    }
+
+    public int getBase(int sibByte) {
+        return sib[sibByte] & BASE_MASK;
+    }
+
+    public int getIndex(int sibByte) {
+        return (sib[sibByte] >> INDEX_SHIFT) & INDEX_MASK;
+    }
+
+    public int getScale(int sibByte) {
+        return (sib[sibByte] >> SCALE_SHIFT) & SCALE_MASK;
+    }
+
+    public boolean hasNoIndex(int sibByte) {
+        return (sib[sibByte] & NO_INDEX) != 0;
+    }
+
+    public boolean hasDisp32Base(int sibByte) {
+        return (sib[sibByte] & DISP32_BASE) != 0;
+    }
+}
@@ -0,0 +1,362 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Flat decode tables built once from instruction patterns.
+ * <p>
+ * Every pattern gets an id, all of its decode information is precomputed from opcode and operands strings,
+ * so interpreter doesn't need to look at these strings while decoding.
+ */
+public class OpcodeTable {
+    public static final int ONE_BYTE = 0;
+    public static final int TWO_BYTE = 1;
+
+    // Decode form of primary opcode
+    public static final int FORM_NONE = 0;
+    public static final int FORM_MODRM = 1;
+    public static final int FORM_DIGIT = 2;
+    public static final int FORM_0F01 = 3;
+
+    // Control flow of instruction
+    public static final int FLOW_NONE = 0;
+    public static final int FLOW_CALL = 1;
+    // Unconditional jump, execution doesn't continue with next instruction
+    public static final int FLOW_JUMP = 2;
+    // Conditional jump, loop or JCXZ
+    public static final int FLOW_BRANCH = 3;
+    // RET, IRET or HLT
+    public static final int FLOW_RETURN = 4;
+
+    // Descriptor bits
+    private static final int FORM_MASK = 0x3;
+    private static final int HAS_MODRM = 0x4;
+    private static final int SEGMENT_IN_OPERANDS = 0x8;
+    private static final int FLOW_SHIFT = 4;
+    private static final int FLOW_MASK = 0x7;
+    // Size of relative branch displacement: 0, 1 (rel8) or 4 (rel32)
+    private static final int RELATIVE_SHIFT = 7;
+    private static final int RELATIVE_MASK = 0x7;
+
+    // Steps applied to operands, in order of appearance in opcode
+    public static final int STEP_CB = 1;
+    public static final int STEP_CD = 2;
+    public static final int STEP_RB = 3;
+    public static final int STEP_RD = 4;
+    public static final int STEP_MODRM = 5;
+    public static final int STEP_IB = 6;
+    public static final int STEP_IW = 7;
+    public static final int STEP_ID = 8;
+    public static final int STEP_MB = 9;
+    public static final int STEP_MD = 10;
+
+    public static final int STEP_BITS = 4;
+    public static final int STEP_MASK = 0xF;
+
+    private static final int MAX_STEPS = 32 / STEP_BITS;
+
+    private final List<InstructionPatternParser.InstructionPattern> patterns;
+
+    private final int[] descriptors;
+    private final int[] lengths;
+    private final int[] steps;
+    private final int[] registerBases;
+    private final String[] mnemonics;
+    private final OperandKind[][] operandKinds;
+    private final String[][] operandTexts;
+
+    // Indexed by map << 8 | opcode
+    private final int[] primary;
+    // Indexed by (map << 8 | opcode) << 3 | digit
+    private final int[] digits;
+    // Indexed by map * 3 + (0 for D0, 1 for D1, 2 otherwise)
+    private final int[] extensions0F01;
+
+    public OpcodeTable(List<List<InstructionPatternParser.InstructionPattern>> oneByteInstructions, List<List<InstructionPatternParser.InstructionPattern>> twoByteInstructions) {
+        List<List<List<InstructionPatternParser.InstructionPattern>>> maps = Arrays.asList(oneByteInstructions, twoByteInstructions);
+
+        Map<InstructionPatternParser.InstructionPattern, Integer> ids = new IdentityHashMap<>();
+        patterns = new ArrayList<>();
+        for (List<List<InstructionPatternParser.InstructionPattern>> map : maps) {
+            for (List<InstructionPatternParser.InstructionPattern> list : map) {
+                for (InstructionPatternParser.InstructionPattern instructionPattern : list) {
+                    if (!ids.containsKey(instructionPattern)) {
+                        ids.put(instructionPattern, patterns.size());
+                        patterns.add(instructionPattern);
+                    }
+                }
+            }
+        }
+
+        int size = patterns.size();
+        descriptors = new int[size];
+        lengths = new int[size];
+        steps = new int[size];
+        registerBases = new int[size];
+        mnemonics = new String[size];
+        operandKinds = new OperandKind[size][];
+        operandTexts = new String[size][];
+
+        for (int id = 0; id < size; ++id) {
+            compile(id, patterns.get(id));
+        }
+
+        primary = new int[2 << 8];
+        digits = new int[2 << 8 << 3];
+        extensions0F01 = new int[2 * 3];
+        Arrays.fill(primary, -1);
+        Arrays.fill(digits, -1);
+        Arrays.fill(extensions0F01, -1);
+
+        for (int m = 0; m < maps.size(); ++m) {
+            List<List<InstructionPatternParser.InstructionPattern>> map = maps.get(m);
+
+            for (int b = 0; b <= 0xFF; ++b) {
+                List<InstructionPatternParser.InstructionPattern> list = map.get(b);
+                if (list.isEmpty()) continue;
+
+                primary[m << 8 | b] = ids.get(list.get(0));
+
+                // Last pattern with matching /digit wins, first pattern is used when none matches
+                for (int digit = 0; digit <= 7; ++digit) {
+                    InstructionPatternParser.InstructionPattern selected = list.get(0);
+                    for (InstructionPatternParser.InstructionPattern instructionPattern : list) {
+                        if (instructionPattern.getOpcode().contains("/" + digit)) {
+                            selected = instructionPattern;
+                        }
+                    }
+                    digits[(m << 8 | b) << 3 | digit] = ids.get(selected);
+                }
+            }
+
+            List<InstructionPatternParser.InstructionPattern> group = map.get(0x01);
+            for (int i = 0; i < 3 && i < group.size(); ++i) {
+                extensions0F01[m * 3 + i] = ids.get(group.get(i));
+            }
+        }
+    }
+
+    private void compile(int id, InstructionPatternParser.InstructionPattern instructionPattern) {
+        String opcode = instructionPattern.getOpcode();
+        String operands = instructionPattern.getOperands();
+
+        boolean slashR = opcode.contains("/r");
+        boolean slashDigit = opcode.matches("[ -~]*[/][0-9][ -~]*");
+
+        int descriptor;
+        if (slashR) {
+            descriptor = FORM_MODRM;
+        } else if (slashDigit) {
+            descriptor = FORM_DIGIT;
+        } else if (opcode.contains("0F01")) {
+            descriptor = FORM_0F01;
+        } else {
+            descriptor = FORM_NONE;
+        }
+        if (slashR || slashDigit) {
+            descriptor |= HAS_MODRM;
+        }
+
+        String[] split = operands.split(",");
+        String[] texts = new String[3];
+        OperandKind[] kinds = new OperandKind[3];
+        for (int i = 0; i < texts.length; ++i) {
+            texts[i] = i < split.length ? split[i] : "";
+            kinds[i] = OperandKind.of(texts[i]);
+
+            if (texts[i].contains(":")) {
+                descriptor |= SEGMENT_IN_OPERANDS;
+            }
+        }
+        if (operands.contains("moffs")) {
+            descriptor |= SEGMENT_IN_OPERANDS;
+        }
+
+        boolean relative = false;
+        for (OperandKind kind : kinds) {
+            if (kind == OperandKind.REL8) {
+                descriptor |= 1 << RELATIVE_SHIFT;
+                relative = true;
+            } else if (kind == OperandKind.REL32) {
+                descriptor |= 4 << RELATIVE_SHIFT;
+                relative = true;
+            }
+        }
+        descriptor |= flowOf(opcode, relative) << FLOW_SHIFT;
+
+        int packedSteps = 0;
+        int stepCount = 0;
+        for (int i = 0; i < opcode.length(); i += 2) {
+            String opByte = opcode.substring(i, Math.min(i + 2, opcode.length()));
+            if (opByte.equals("+r")) {
+                opByte = opcode.substring(i, Math.min(i + 3, opcode.length()));
+                i += 1;
+            }
+
+            int step = stepOf(opByte);
+            if (step == 0) continue;
+
+            if (stepCount == MAX_STEPS) {
+                throw new IllegalStateException("Too many operand steps in opcode " + opcode);
+            }
+            packedSteps |= step << (stepCount++ * STEP_BITS);
+
+            if (step == STEP_RB || step == STEP_RD) {
+                HexBinaryAdapter hexBinaryAdapter = new HexBinaryAdapter();
+                registerBases[id] = hexBinaryAdapter.unmarshal(opcode.substring(0, 2))[0];
+            }
+        }
+
+        descriptors[id] = descriptor;
+        lengths[id] = instructionPattern.getLength();
+        steps[id] = packedSteps;
+        mnemonics[id] = instructionPattern.getMnemo();
+        operandKinds[id] = kinds;
+        operandTexts[id] = texts;
+    }
+
+    // Flow by primary opcode and /digit, not by mnemonic, so mnemonic aliases and far or indirect forms
+    // are told apart; only Jcc, LOOP and JCXZ with rel8 or rel32 operand are branches
+    private static int flowOf(String opcode, boolean relative) {
+        String primary = opcode.substring(0, Math.min(opcode.startsWith("0F") ? 4 : 2, opcode.length()));
+        int digit = opcode.length() > 3 && opcode.charAt(2) == '/' ? Character.digit(opcode.charAt(3), 10) : -1;
+
+        switch (primary) {
+            case "E8":
+            case "9A":
+                return FLOW_CALL;
+            case "E9":
+            case "EB":
+            case "EA":
+                return FLOW_JUMP;
+            case "C2":
+            case "C3":
+            case "CA":
+            case "CB":
+            case "CF":
+            case "F4":
+                return FLOW_RETURN;
+            case "FF":
+                if (digit == 2 || digit == 3) {
+                    return FLOW_CALL;
+                } else if (digit == 4 || digit == 5) {
+                    return FLOW_JUMP;
+                }
+                return FLOW_NONE;
+            case "E0":
+            case "E1":
+            case "E2":
+            case "E3":
+                return relative ? FLOW_BRANCH : FLOW_NONE;
+        }
+
+        // 70-7F and 0F 80-8F
+        boolean conditional = primary.length() == 2 ? primary.charAt(0) == '7' : primary.startsWith("0F8");
+        return conditional && relative ? FLOW_BRANCH : FLOW_NONE;
+    }
+
+    private static int stepOf(String opByte) {
+        switch (opByte) {
+            case "cb":
+                return STEP_CB;
+            case "cd":
+                return STEP_CD;
+            case "+rb":
+                return STEP_RB;
+            case "+rw":
+            case "+rd":
+                return STEP_RD;
+            case "ib":
+                return STEP_IB;
+            case "iw":
+                return STEP_IW;
+            case "id":
+                return STEP_ID;
+            case "mb":
+                return STEP_MB;
+            case "md":
+                return STEP_MD;
+            default:
+                return opByte.equals("/r") || opByte.matches("[ -~]*[/][0-9][ -~]*") ? STEP_MODRM : 0;
+        }
+    }
+
+    /**
+     * @return id of first pattern for opcode or -1 when there is none
+     */
+    public int getPattern(int map, int opcode) {
+        return primary[map << 8 | opcode];
+    }
+
+    public int getDigitPattern(int map, int opcode, int digit) {
+        return digits[(map << 8 | opcode) << 3 | digit];
+    }
+
+    /**
+     * @return id of pattern from 0F01 group or -1 when map doesn't contain whole group
+     */
+    public int get0F01Pattern(int map, int thirdByte) {
+        int index = thirdByte == 0xD0 ? 0 : thirdByte == 0xD1 ? 1 : 2;
+        return extensions0F01[map * 3 + index];
+    }
+
+    public int getForm(int pattern) {
+        return descriptors[pattern] & FORM_MASK;
+    }
+
+    public boolean hasModRm(int pattern) {
+        return (descriptors[pattern] & HAS_MODRM) != 0;
+    }
+
+    public boolean hasSegmentInOperands(int pattern) {
+        return (descriptors[pattern] & SEGMENT_IN_OPERANDS) != 0;
+    }
+
+    public int getFlow(int pattern) {
+        return (descriptors[pattern] >> FLOW_SHIFT) & FLOW_MASK;
+    }
+
+    /**
+     * @return size of rel8 or rel32 operand, 0 when instruction has no relative operand
+     */
+    public int getRelativeSize(int pattern) {
+        return (descriptors[pattern] >> RELATIVE_SHIFT) & RELATIVE_MASK;
+    }
+
+    public int getLength(int pattern) {
+        return lengths[pattern];
+    }
+
+    public int getSteps(int pattern) {
+        return steps[pattern];
+    }
+
+    public int getRegisterBase(int pattern) {
+        return registerBases[pattern];
+    }
+
+    public String getMnemonic(int pattern) {
+        return mnemonics[pattern];
+    }
+
+    public OperandKind[] getOperandKinds(int pattern) {
+        return operandKinds[pattern];
+    }
+
+    public String[] getOperandTexts(int pattern) {
+        return operandTexts[pattern];
+    }
+
+    public InstructionPatternParser.InstructionPattern getInstructionPattern(int pattern) {
+        return patterns.get(pattern);
+    }
+
+    public int size() {
+        return patterns.size();
+    }
+}
@@ -0,0 +1,62 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+/**
+ * Operand of instruction pattern, as written in i386 documentation.
+ * Every kind except LITERAL is replaced with value decoded from machine code, LITERAL operands are printed as they are.
+ */
+public enum OperandKind {
+    LITERAL,
+    RM8,
+    RM16,
+    RM32,
+    R8,
+    R16,
+    R32,
+    REG8,
+    REG32,
+    SREG,
+    REL8,
+    REL32,
+    IMM8,
+    IMM16,
+    IMM32,
+    MOFFS8,
+    MOFFS32;
+
+    public static OperandKind of(String operand) {
+        switch (operand) {
+            case "r/m8":
+                return RM8;
+            case "r/m16":
+                return RM16;
+            case "r/m32":
+                return RM32;
+            case "r8":
+                return R8;
+            case "r16":
+                return R16;
+            case "r32":
+                return R32;
+            case "reg8":
+                return REG8;
+            case "reg32":
+                return REG32;
+            case "rel8":
+                return REL8;
+            case "rel32":
+                return REL32;
+            case "imm8":
+                return IMM8;
+            case "imm16":
+                return IMM16;
+            case "imm32":
+                return IMM32;
+            case "moffs8":
+                return MOFFS8;
+            case "moffs32":
+                return MOFFS32;
+            default:
+                return operand.contains("Sreg") ? SREG : LITERAL;
+        }
+    }
+}
@@ -6,61 +6,372 @@ import lombok.NoArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class PEFile {
     private static final Logger logger = LoggerFactory.getLogger(PEFile.class);
 
-    private List<Byte> exe;
+    private static final int DOS_HEADER_SIZE = 0x40;
+    private static final int E_LFANEW = 0x3C;
+    // "MZ" and "PE\0\0" read as little-endian numbers
+    private static final short DOS_SIGNATURE = 0x5A4D;
+    private static final int PE_SIGNATURE = 0x00004550;
+    private static final int COFF_HEADER_SIZE = 0x18;
+    // Optional header is read up to ImageBase
+    private static final int MIN_PE_HEADERS_SIZE = 0x38;
+    private static final int SECTION_TABLE_SIZE = 0x28;
+    // Optional header of PE32 image, data directories up to import directory
+    private static final short PE32_MAGIC = 0x10B;
+    private static final int MIN_OPTIONAL_HEADER_SIZE = 0x70;
+
+    // Largest array that can be allocated
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+    // First buffer for bytes read from stream, doubled until all requested bytes are read
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    // Whole file or its headers, headers are read with absolute little-endian gets
+    private ByteBuffer exe;
 
     private DosHeader dosHeader;
     private Code code;
 
-    private List<List<Byte>> machineCode;
+    private List<ByteBuffer> machineCode;
     private List<Code.SectionTable> codeTables;
+    private List<Code.SectionTable> sectionTables;
+    private int sizeOfCode;
     private int imageBase;
     private int addressOfEntryPoint;
+    private ImportTable importTable;
 
     private boolean isPE;
 
     public PEFile(byte[] machineCode) {
+        this.machineCode = new ArrayList<>();
+        this.machineCode.add(ByteBuffer.wrap(machineCode).asReadOnlyBuffer());
+
         code = new Code(machineCode);
         codeTables = code.codeTables;
+        sectionTables = code.sectionTables;
+    }
+
+    // Headers only, filled by readHeaders
+    private PEFile() {
+        machineCode = new ArrayList<>();
+    }
+
+    // Bytes of the file from the start up to given length, one implementation per kind of input
+    private interface HeaderSource {
+        /**
+         * @return prefix followed by bytes up to length, shorter when the file ends first
+         */
+        byte[] readUpTo(byte[] prefix, long length) throws IOException;
+    }
+
+    /**
+     * Receives every code section as soon as it is read, while rest of the file may still be arriving.
+     */
+    public interface CodeSectionListener {
+        /**
+         * @param section index of the section in {@link #getCodeTables()}
+         */
+        void onCodeSection(int section, ByteBuffer machineCode, Code.SectionTable codeTable, int imageBase);
+    }
+
+    /**
+     * Maps file behind the stream into memory. Other streams are read once: headers first, then code
+     * sections only, bytes of other sections and overlay are skipped. Reading stops right after headers
+     * when input isn't PE file.
+     */
+    public PEFile(InputStream inputStream) throws IOException {
+        this(inputStream, (section, machineCode, codeTable, imageBase) -> {
+        });
+    }
+
+    public PEFile(InputStream inputStream, CodeSectionListener listener) throws IOException {
+        machineCode = new ArrayList<>();
+
+        try (InputStream input = inputStream) {
+            if (input instanceof FileInputStream) {
+                try (FileChannel channel = ((FileInputStream) input).getChannel()) {
+                    parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                }
+                onCodeSections(listener);
+            } else {
+                ingest(input, listener);
+            }
+        }
+    }
+
+    /**
+     * Reads and parses only headers and section table, bytes of sections aren't read and
+     * {@link #getMachineCode()} is empty. File behind the stream is read with positional reads.
+     */
+    public static PEFile readHeaders(InputStream inputStream) throws IOException {
+        PEFile peFile = new PEFile();
+
+        try (InputStream input = inputStream) {
+            if (input instanceof FileInputStream) {
+                FileChannel channel = ((FileInputStream) input).getChannel();
+                peFile.bufferHeaders((prefix, length) -> readAt(channel, prefix, length));
+            } else {
+                peFile.bufferHeaders((prefix, length) -> readUpTo(input, prefix, length));
+            }
+        }
+
+        peFile.exe = null;
+        return peFile;
     }
 
-    public PEFile(InputStream inputStream) {
+    /**
+     * @param exe whole file, code sections are read in place
+     */
+    public PEFile(ByteBuffer exe) {
         machineCode = new ArrayList<>();
-        exe = new ArrayList<>();
+        parse(exe);
+    }
+
+    /**
+     * @param exe whole file, code sections are read in place and passed to listener once headers are parsed
+     */
+    public PEFile(ByteBuffer exe, CodeSectionListener listener) {
+        this(exe);
+        onCodeSections(listener);
+    }
+
+    private void onCodeSections(CodeSectionListener listener) {
+        for (int l = 0; l < machineCode.size(); ++l) {
+            listener.onCodeSection(l, machineCode.get(l), codeTables.get(l), imageBase);
+        }
+    }
 
-        isPE = true;
+    // Code sections are slices of the file
+    private void parse(ByteBuffer file) {
+        exe = file.slice().order(ByteOrder.LITTLE_ENDIAN);
+        parseHeaders();
 
-        try {
-            BufferedInputStream input = new BufferedInputStream(inputStream);
+        if (isPE) {
+            for (Code.SectionTable table : codeTables) {
+                if (table.pointerToRawData < 0 || table.pointerToRawData > exe.limit() - table.sizeOfRawData) {
+                    throw new IndexOutOfBoundsException("Section " + new String(table.name).trim() + " lies outside of the file");
+                }
+
+                ByteBuffer section = exe.duplicate();
+                section.position(table.pointerToRawData).limit(table.pointerToRawData + table.sizeOfRawData);
+
+                machineCode.add(section.slice().asReadOnlyBuffer());
+            }
 
-            boolean eof = false;
-            while (true) {
-                byte[] tmp = new byte[1];
-                int in = input.read(tmp, 0, 1);
-                if (in == -1) eof = true;
-                if (eof) break;
+            // Section with imports is kept for import table, which is parsed only when it's used
+            Code.SectionTable table = code.importSectionTable;
+            if (table != null && table.pointerToRawData >= 0 && table.pointerToRawData <= exe.limit() - table.sizeOfRawData) {
+                ByteBuffer section = exe.duplicate();
+                section.position(table.pointerToRawData).limit(table.pointerToRawData + table.sizeOfRawData);
 
-                exe.add(tmp[0]);
+                importTable = new ImportTable(section.slice(), table.virtualAdress, code.importDirectory, imageBase);
             }
-            inputStream.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+        }
+
+        // Headers are parsed and sections sliced, rest of the file isn't referenced anymore
+        exe = null;
+    }
+
+    private void ingest(InputStream input, CodeSectionListener listener) throws IOException {
+        byte[] headers = bufferHeaders((prefix, length) -> readUpTo(input, prefix, length));
+
+        if (isPE) {
+            ingestSections(input, headers, listener);
+        }
+
+        exe = null;
+    }
+
+    // Buffers headers up to the end of section table, every step reads only when previous one found PE file
+    private byte[] bufferHeaders(HeaderSource source) throws IOException {
+        byte[] headers = source.readUpTo(new byte[0], DOS_HEADER_SIZE);
+        ByteBuffer buffer = ByteBuffer.wrap(headers).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (headers.length == DOS_HEADER_SIZE && buffer.getShort(0) == DOS_SIGNATURE && buffer.getInt(E_LFANEW) >= 0) {
+            long peHeader = buffer.getInt(E_LFANEW);
+
+            headers = source.readUpTo(headers, peHeader + COFF_HEADER_SIZE);
+            buffer = ByteBuffer.wrap(headers).order(ByteOrder.LITTLE_ENDIAN);
+
+            if (headers.length >= peHeader + COFF_HEADER_SIZE && buffer.getInt((int) peHeader) == PE_SIGNATURE) {
+                short numberOfSections = buffer.getShort((int) peHeader + 0x06);
+                short sizeOfOptionalHeader = buffer.getShort((int) peHeader + 0x14);
+                long sectionTablesEnd = peHeader + COFF_HEADER_SIZE + sizeOfOptionalHeader + (long) numberOfSections * SECTION_TABLE_SIZE;
+
+                headers = source.readUpTo(headers, Math.max(sectionTablesEnd, peHeader + MIN_PE_HEADERS_SIZE));
+            }
+        }
+
+        exe = ByteBuffer.wrap(headers).order(ByteOrder.LITTLE_ENDIAN);
+        parseHeaders();
+
+        return headers;
+    }
+
+    // Code sections and section with imports ordered by file offset are read in one pass, overlapping sections share one buffer
+    private void ingestSections(InputStream input, byte[] headers, CodeSectionListener listener) throws IOException {
+        List<Code.SectionTable> byOffset = new ArrayList<>(codeTables);
+        if (code.importSectionTable != null && !codeTables.contains(code.importSectionTable)) {
+            byOffset.add(code.importSectionTable);
+        }
+        byOffset.sort(Comparator.comparingInt(Code.SectionTable::getPointerToRawData));
+
+        Map<Code.SectionTable, ByteBuffer> sections = new IdentityHashMap<>();
+        long position = headers.length;
+
+        for (int i = 0; i < byOffset.size(); ) {
+            long start = byOffset.get(i).pointerToRawData;
+            long end = start + byOffset.get(i).sizeOfRawData;
+
+            int j = i + 1;
+            while (j < byOffset.size() && byOffset.get(j).pointerToRawData < end) {
+                end = Math.max(end, (long) byOffset.get(j).pointerToRawData + byOffset.get(j).sizeOfRawData);
+                ++j;
+            }
+
+            // Code sections have to be in the file, imports are left out when they aren't
+            Code.SectionTable last = null;
+            long required = start;
+            for (int k = i; k < j; ++k) {
+                Code.SectionTable table = byOffset.get(k);
+                if (codeTables.contains(table) && (long) table.pointerToRawData + table.sizeOfRawData > required) {
+                    last = table;
+                    required = (long) table.pointerToRawData + table.sizeOfRawData;
+                }
+            }
+
+            byte[] range = null;
+            if (start >= 0 && end - start <= MAX_BUFFER_SIZE) {
+                if (start < headers.length) {
+                    // Sections within headers continue from the end of headers
+                    byte[] buffered = Arrays.copyOfRange(headers, (int) start, (int) Math.min(end, headers.length));
+                    range = readUpTo(input, buffered, end - start);
+                } else if (skip(input, start - position)) {
+                    range = readUpTo(input, new byte[0], end - start);
+                }
+            }
+
+            if (last != null && (range == null || range.length < required - start)) {
+                throw new IndexOutOfBoundsException("Section " + new String(last.name).trim() + " lies outside of the file");
+            }
+            if (range == null) {
+                i = j;
+                continue;
+            }
+            position = Math.max(position, start + range.length);
+
+            for (; i < j; ++i) {
+                Code.SectionTable table = byOffset.get(i);
+                if (table.pointerToRawData - start + table.sizeOfRawData > range.length) continue;
+
+                ByteBuffer section = ByteBuffer.wrap(range, (int) (table.pointerToRawData - start), table.sizeOfRawData).slice().asReadOnlyBuffer();
+                sections.put(table, section);
+
+                int index = codeTables.indexOf(table);
+                if (index >= 0) {
+                    listener.onCodeSection(index, section, table, imageBase);
+                }
+            }
+        }
+
+        for (Code.SectionTable table : codeTables) {
+            machineCode.add(sections.get(table));
+        }
+
+        ByteBuffer imports = sections.get(code.importSectionTable);
+        if (imports != null) {
+            importTable = new ImportTable(imports, code.importSectionTable.virtualAdress, code.importDirectory, imageBase);
+        }
+    }
+
+    private void parseHeaders() {
+        isPE = exe.limit() >= DOS_HEADER_SIZE;
+        if (!isPE) {
+            codeTables = new ArrayList<>();
+            sectionTables = new ArrayList<>();
+            return;
         }
 
         dosHeader = new DosHeader();
         code = new Code();
 
         codeTables = code.codeTables;
+        sectionTables = code.sectionTables;
+
+        code.pe = null;
+    }
+
+    // Prefix followed by bytes read from input up to length, shorter when input ends first
+    private static byte[] readUpTo(InputStream input, byte[] prefix, long length) throws IOException {
+        if (length <= prefix.length || length > MAX_BUFFER_SIZE) {
+            return prefix;
+        }
+
+        // Buffer grows with bytes actually read, so header claiming huge size doesn't allocate it up front
+        byte[] buffer = Arrays.copyOf(prefix, (int) Math.min(length, Math.max(2L * prefix.length, READ_BUFFER_SIZE)));
+        int filled = prefix.length;
+
+        while (filled < length) {
+            if (filled == buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) Math.min(length, 2L * buffer.length));
+            }
+
+            int read = input.read(buffer, filled, buffer.length - filled);
+            if (read < 0) {
+                return Arrays.copyOf(buffer, filled);
+            }
+            filled += read;
+        }
+
+        return buffer;
+    }
+
+    // Prefix followed by bytes of the file at the same offsets, read without moving position of the channel
+    private static byte[] readAt(FileChannel channel, byte[] prefix, long length) throws IOException {
+        long end = Math.min(length, channel.size());
+        if (end <= prefix.length || end > MAX_BUFFER_SIZE) {
+            return prefix;
+        }
+
+        byte[] buffer = Arrays.copyOf(prefix, (int) end);
+        ByteBuffer target = ByteBuffer.wrap(buffer, prefix.length, buffer.length - prefix.length);
+        while (target.hasRemaining()) {
+            if (channel.read(target, target.position()) < 0) {
+                return Arrays.copyOf(buffer, target.position());
+            }
+        }
+
+        return buffer;
+    }
+
+    // False when input ends before count bytes are skipped
+    private static boolean skip(InputStream input, long count) throws IOException {
+        while (count > 0) {
+            long skipped = input.skip(count);
+            if (skipped <= 0) {
+                if (input.read() < 0) {
+                    return false;
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+
+        return true;
     }
 
     @Getter
@@ -120,30 +431,21 @@ public class PEFile {
         }
 
         private char getChar() {
-            return (char) exe.get(pos++).byteValue();
+            return (char) exe.get(pos++);
         }
 
         private short getShort() {
-            ByteBuffer byteBuffer = ByteBuffer.allocate(2);
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            byteBuffer.put(exe.get(pos));
-            byteBuffer.put(exe.get(pos + 1));
+            short value = exe.getShort(pos);
             pos += 2;
 
-            return byteBuffer.getShort(0);
+            return value;
         }
 
         private int getInt() {
-            ByteBuffer byteBuffer = ByteBuffer.allocate(4);
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            byteBuffer.put(exe.get(pos));
-            byteBuffer.put(exe.get(pos + 1));
-            byteBuffer.put(exe.get(pos + 2));
-            byteBuffer.put(exe.get(pos + 3));
-
+            int value = exe.getInt(pos);
             pos += 4;
 
-            return byteBuffer.getInt(0);
+            return value;
         }
 
         @Override
@@ -186,68 +488,60 @@ public class PEFile {
     }
 
     public class Code {
-        private List<Byte> pe;
+        private ByteBuffer pe;
         private List<SectionTable> codeTables;
+        private List<SectionTable> sectionTables;
+
+        // RVA of import directory and section containing it, null when image has no imports
+        private int importDirectory;
+        private SectionTable importSectionTable;
 
         public Code(byte[] machineCode) {
             codeTables = new ArrayList<>();
             codeTables.add(new SectionTable(".text".toCharArray(), machineCode.length, 0, 0, 0, 0, 0, (short) 0, (short) 0, 0, 0));
+            sectionTables = new ArrayList<>(codeTables);
         }
 
         public Code() {
-            pe = new ArrayList<>();
             codeTables = new ArrayList<>();
+            sectionTables = new ArrayList<>();
 
-            for (int i = dosHeader.e_lfanew; i < exe.size(); ++i) {
-                pe.add(exe.get(i));
-            }
-
-            if (pe.size() <= 4) {
+            if (exe.getShort(0) != DOS_SIGNATURE || dosHeader.e_lfanew < 0 || exe.limit() - dosHeader.e_lfanew <= 4) {
                 isPE = false;
                 return;
             }
 
-            ByteBuffer byteBuffer = ByteBuffer.allocate(4);
-            byteBuffer.order(ByteOrder.BIG_ENDIAN);
-            byteBuffer.put(pe.get(0x00));
-            byteBuffer.put(pe.get(0x01));
-            byteBuffer.put(pe.get(0x02));
-            byteBuffer.put(pe.get(0x03));
-            int signature = byteBuffer.getInt(0);
+            pe = exe.duplicate();
+            pe.position(dosHeader.e_lfanew);
+            pe = pe.slice().order(ByteOrder.LITTLE_ENDIAN);
 
-            if (signature != 0x50450000) {
+            int signature = pe.getInt(0x00);
+
+            if (signature != PE_SIGNATURE) {
                 isPE = false;
                 return;
             }
 
-            byteBuffer = ByteBuffer.allocate(2);
-            byteBuffer.put(pe.get(0x06));
-            byteBuffer.put(pe.get(0x07));
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            short numberOfSections = byteBuffer.getShort(0);
-
-            byteBuffer = ByteBuffer.allocate(2);
-            byteBuffer.put(pe.get(0x14));
-            byteBuffer.put(pe.get(0x15));
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            short sizeOfOptionalHeader = byteBuffer.getShort(0);
-
-            byteBuffer = ByteBuffer.allocate(4);
-            byteBuffer.put(pe.get(0x1C));
-            byteBuffer.put(pe.get(0x1D));
-            byteBuffer.put(pe.get(0x1E));
-            byteBuffer.put(pe.get(0x1F));
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            int sizeOfCode = byteBuffer.getInt(0);
-
-            int sizeOfCoffHeader = 0x18;
+            short numberOfSections = pe.getShort(0x06);
+            short sizeOfOptionalHeader = pe.getShort(0x14);
+            sizeOfCode = pe.getInt(0x1C);
 
-            int sectionTablesAdress = sizeOfCoffHeader + sizeOfOptionalHeader;
+            // Optional header starts with magic at 0x18, NumberOfRvaAndSizes is at 0x74 and import directory at 0x80
+            if (pe.limit() >= COFF_HEADER_SIZE + MIN_OPTIONAL_HEADER_SIZE && sizeOfOptionalHeader >= MIN_OPTIONAL_HEADER_SIZE
+                    && pe.getShort(0x18) == PE32_MAGIC && pe.getInt(0x74) > 1) {
+                importDirectory = pe.getInt(0x80);
+            }
 
-            int sizeOfSectionTable = 0x28;
+            int sectionTablesAdress = COFF_HEADER_SIZE + sizeOfOptionalHeader;
 
-            for (int i = sectionTablesAdress; i < sectionTablesAdress + numberOfSections * sizeOfSectionTable; i += sizeOfSectionTable) {
+            for (int i = sectionTablesAdress; i < sectionTablesAdress + numberOfSections * SECTION_TABLE_SIZE; i += SECTION_TABLE_SIZE) {
                 SectionTable sectionTable = new SectionTable(i);
+                sectionTables.add(sectionTable);
+
+                if (importDirectory != 0 && importSectionTable == null && sectionTable.sizeOfRawData > 0
+                        && Integer.compareUnsigned(importDirectory - sectionTable.virtualAdress, sectionTable.sizeOfRawData) < 0) {
+                    importSectionTable = sectionTable;
+                }
 
                 // Checking if section contains executable code
                 if ((sectionTable.characteristics & 0x00000020) == 0x00000020) {
@@ -265,31 +559,8 @@ public class PEFile {
                 logger.warn("Not all code sections were found");
             }
 
-            for (SectionTable table : codeTables) {
-                List<Byte> code = new ArrayList<>();
-
-                for(int i = table.pointerToRawData; i < table.pointerToRawData + table.sizeOfRawData; ++i) {
-                    code.add(exe.get(i));
-                }
-
-                machineCode.add(code);
-            }
-
-            byteBuffer = ByteBuffer.allocate(4);
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            byteBuffer.put(pe.get(0x34));
-            byteBuffer.put(pe.get(0x35));
-            byteBuffer.put(pe.get(0x36));
-            byteBuffer.put(pe.get(0x37));
-            imageBase = byteBuffer.getInt(0);
-
-            byteBuffer = ByteBuffer.allocate(4);
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            byteBuffer.put(pe.get(0x28));
-            byteBuffer.put(pe.get(0x29));
-            byteBuffer.put(pe.get(0x2A));
-            byteBuffer.put(pe.get(0x2B));
-            addressOfEntryPoint = byteBuffer.getInt(0) + imageBase;
+            imageBase = pe.getInt(0x34);
+            addressOfEntryPoint = pe.getInt(0x28) + imageBase;
         }
 
         @Getter
@@ -347,35 +618,26 @@ public class PEFile {
             }
 
             private char getChar() {
-                return (char) pe.get(pos++).byteValue();
+                return (char) pe.get(pos++);
             }
 
             private short getShort() {
-                ByteBuffer byteBuffer = ByteBuffer.allocate(2);
-                byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-                byteBuffer.put(pe.get(pos));
-                byteBuffer.put(pe.get(pos + 1));
+                short value = pe.getShort(pos);
                 pos += 2;
 
-                return byteBuffer.getShort(0);
+                return value;
             }
 
             private int getInt() {
-                ByteBuffer byteBuffer = ByteBuffer.allocate(4);
-                byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-                byteBuffer.put(pe.get(pos));
-                byteBuffer.put(pe.get(pos + 1));
-                byteBuffer.put(pe.get(pos + 2));
-                byteBuffer.put(pe.get(pos + 3));
-
+                int value = pe.getInt(pos);
                 pos += 4;
 
-                return byteBuffer.getInt(0);
+                return value;
             }
         }
     }
 
-    public List<List<Byte>> getMachineCode() {
+    public List<ByteBuffer> getMachineCode() {
         return machineCode;
     }
 
@@ -383,6 +645,20 @@ public class PEFile {
         return codeTables;
     }
 
+    /**
+     * @return all sections of the image in order of section table, code sections included
+     */
+    public List<Code.SectionTable> getSectionTables() {
+        return sectionTables;
+    }
+
+    /**
+     * @return SizeOfCode from optional header, sum of code sections when the header is consistent
+     */
+    public int getSizeOfCode() {
+        return sizeOfCode;
+    }
+
     public int getImageBase() {
         return imageBase;
     }
@@ -391,6 +667,13 @@ public class PEFile {
         return addressOfEntryPoint;
     }
 
+    /**
+     * @return imports of the image, null when it has none or they lie outside of the file
+     */
+    public ImportTable getImportTable() {
+        return importTable;
+    }
+
     public boolean isPE() {
         return isPE;
     }
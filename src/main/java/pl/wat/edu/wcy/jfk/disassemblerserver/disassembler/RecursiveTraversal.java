@@ -0,0 +1,237 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Recursive descent disassembly, decodes only code reachable from entry points by following
+ * CALL, JMP and conditional jump targets given by rel8 and rel32 operands.
+ * <p>
+ * Worklist of addresses is processed in rounds, paths started in one round are decoded concurrently and
+ * targets found by them form the next round. Visited bitmap of every section marks instruction starts
+ * already taken by some path, so every instruction is decoded once.
+ * Without following calls only code of functions containing entry points is decoded.
+ */
+public class RecursiveTraversal {
+    private final MachineCodeInterpreter interpreter;
+    private final List<PEFile.Code.SectionTable> codeTables;
+    private final boolean followCalls;
+
+    private final ByteBuffer[] code;
+    // Virtual address of every section
+    private final int[] bases;
+    private final AtomicIntegerArray[] visited;
+
+    public RecursiveTraversal(MachineCodeInterpreter interpreter, List<ByteBuffer> machineCode, List<PEFile.Code.SectionTable> codeTables, int imageBase) {
+        this(interpreter, machineCode, codeTables, imageBase, true);
+    }
+
+    public RecursiveTraversal(MachineCodeInterpreter interpreter, List<ByteBuffer> machineCode, List<PEFile.Code.SectionTable> codeTables, int imageBase, boolean followCalls) {
+        this.interpreter = interpreter;
+        this.codeTables = codeTables;
+        this.followCalls = followCalls;
+
+        int sections = machineCode.size();
+        code = new ByteBuffer[sections];
+        bases = new int[sections];
+        visited = new AtomicIntegerArray[sections];
+
+        for (int l = 0; l < sections; ++l) {
+            code[l] = machineCode.get(l).slice().order(ByteOrder.LITTLE_ENDIAN);
+            bases[l] = imageBase + codeTables.get(l).getVirtualAdress();
+            visited[l] = new AtomicIntegerArray((Math.max(codeTables.get(l).getMisc(), 0) + 31) >>> 5);
+        }
+    }
+
+    /**
+     * @param entryPoints virtual addresses to start from, addresses outside code sections are ignored
+     * @return reachable instructions of every section, sorted by address
+     */
+    public List<DecodedSection> traverse(int[] entryPoints, Executor executor, int parallelism) {
+        List<List<Path>> paths = new ArrayList<>();
+        for (int l = 0; l < code.length; ++l) {
+            paths.add(new ArrayList<>());
+        }
+
+        int[] worklist = entryPoints.clone();
+        int size = worklist.length;
+
+        while (size > 0) {
+            int workers = Math.max(1, Math.min(parallelism, size));
+            Path[] results = new Path[workers];
+
+            if (workers == 1 || executor == null) {
+                results[0] = follow(worklist, 0, size);
+                workers = 1;
+            } else {
+                CompletableFuture<?>[] futures = new CompletableFuture<?>[workers];
+                for (int i = 0; i < workers; ++i) {
+                    int worker = i;
+                    int from = (int) ((long) size * i / workers);
+                    int to = (int) ((long) size * (i + 1) / workers);
+                    int[] round = worklist;
+                    futures[i] = CompletableFuture.runAsync(() -> results[worker] = follow(round, from, to), executor);
+                }
+                join(futures);
+            }
+
+            int next = 0;
+            for (int i = 0; i < workers; ++i) {
+                next += results[i].targetCount;
+            }
+
+            worklist = new int[next];
+            size = 0;
+            for (int i = 0; i < workers; ++i) {
+                Path path = results[i];
+                System.arraycopy(path.targets, 0, worklist, size, path.targetCount);
+                size += path.targetCount;
+
+                for (int l = 0; l < code.length; ++l) {
+                    if (path.instructions[l] != null) {
+                        paths.get(l).add(path);
+                    }
+                }
+            }
+        }
+
+        List<DecodedSection> decodedSections = new ArrayList<>();
+        for (int l = 0; l < code.length; ++l) {
+            decodedSections.add(merge(l, paths.get(l)));
+        }
+
+        return decodedSections;
+    }
+
+    // Instructions and branch targets found by one worker in one round
+    private static class Path {
+        private DecodedSection[] instructions;
+        private int[] targets = new int[16];
+        private int targetCount;
+
+        private void addTarget(int target) {
+            if (targetCount == targets.length) {
+                targets = Arrays.copyOf(targets, targetCount * 2);
+            }
+            targets[targetCount++] = target;
+        }
+    }
+
+    private Path follow(int[] worklist, int from, int to) {
+        Path path = new Path();
+        path.instructions = new DecodedSection[code.length];
+
+        OpcodeTable opcodeTable = interpreter.getOpcodeTable();
+        int[] decoded = new int[3];
+
+        for (int i = from; i < to; ++i) {
+            int l = sectionOf(worklist[i]);
+            if (l < 0) continue;
+
+            int p = worklist[i] - bases[l];
+            int size = codeTables.get(l).getMisc();
+
+            while (p < size && claim(l, p)) {
+                int length;
+                try {
+                    length = interpreter.decodeInstruction(code[l], p, decoded);
+                } catch (RuntimeException e) {
+                    // Path runs out of section
+                    break;
+                }
+
+                int instr = decoded[MachineCodeInterpreter.DECODED_PATTERN];
+                if (instr < 0) break;
+
+                if (path.instructions[l] == null) {
+                    path.instructions[l] = new DecodedSection(interpreter, code[l], bases[l], 64);
+                }
+                path.instructions[l].append(p + bases[l], length, instr, decoded[MachineCodeInterpreter.DECODED_PREFIXES]);
+
+                int flow = opcodeTable.getFlow(instr);
+                if (flow != OpcodeTable.FLOW_NONE && (followCalls || flow != OpcodeTable.FLOW_CALL)) {
+                    int target = interpreter.getBranchTarget(code[l], p, length, instr, decoded[MachineCodeInterpreter.DECODED_PREFIXES]);
+                    if (target != MachineCodeInterpreter.NO_TARGET) {
+                        path.addTarget(target + bases[l]);
+                    }
+                }
+
+                if (flow == OpcodeTable.FLOW_JUMP || flow == OpcodeTable.FLOW_RETURN) break;
+
+                p += length;
+            }
+        }
+
+        return path;
+    }
+
+    private int sectionOf(int address) {
+        for (int l = 0; l < code.length; ++l) {
+            int p = address - bases[l];
+            if (p >= 0 && p < codeTables.get(l).getMisc()) {
+                return l;
+            }
+        }
+
+        return -1;
+    }
+
+    // Marks instruction start as visited, returns false when it was visited before
+    private boolean claim(int section, int p) {
+        AtomicIntegerArray bitmap = visited[section];
+        int bit = 1 << (p & 31);
+
+        while (true) {
+            int word = bitmap.get(p >>> 5);
+            if ((word & bit) != 0) {
+                return false;
+            }
+            if (bitmap.compareAndSet(p >>> 5, word, word | bit)) {
+                return true;
+            }
+        }
+    }
+
+    private DecodedSection merge(int section, List<Path> paths) {
+        DecodedSection all = new DecodedSection(interpreter, code[section], bases[section], 64);
+        for (Path path : paths) {
+            DecodedSection instructions = path.instructions[section];
+            for (int j = 0; j < instructions.getInstructionCount(); ++j) {
+                all.append(instructions.getAddress(j), instructions.getLength(j), instructions.getPattern(j), instructions.getPrefixes(j));
+            }
+        }
+
+        // Offset in high bits and index in low bits, sorting gives instructions ordered by address
+        long[] order = new long[all.getInstructionCount()];
+        for (int j = 0; j < order.length; ++j) {
+            order[j] = (long) (all.getAddress(j) - bases[section]) << 32 | j;
+        }
+        Arrays.sort(order);
+
+        DecodedSection result = new DecodedSection(interpreter, code[section], bases[section], order.length);
+        for (long key : order) {
+            int j = (int) key;
+            result.append(all.getAddress(j), all.getLength(j), all.getPattern(j), all.getPrefixes(j));
+        }
+
+        return result;
+    }
+
+    private static void join(CompletableFuture<?>[] futures) {
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rendered text of instructions shared by all decoded sections, keyed by bytes the rendering reads.
+ * <p>
+ * Bytes of rel8 or rel32 operand are left out of the key, so e.g. all CALL rel32 instructions share
+ * one entry and only the displacement is formatted again. Cache is direct-mapped: every key has one slot
+ * and a new entry replaces the old one, entries are immutable so slots are read and written without locks.
+ */
+public class RenderCache {
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private static class Entry {
+        private final byte[] key;
+        private final int pattern;
+        private final int prefixes;
+
+        private final String opcode;
+        private final String mnemo;
+        private final String[] operands;
+        // Bit j is set when operand j is relative displacement
+        private final int relativeOperands;
+
+        private Entry(byte[] key, int pattern, int prefixes, String opcode, String mnemo, String[] operands, int relativeOperands) {
+            this.key = key;
+            this.pattern = pattern;
+            this.prefixes = prefixes;
+            this.opcode = opcode;
+            this.mnemo = mnemo;
+            this.operands = operands;
+            this.relativeOperands = relativeOperands;
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Statistics {
+        private int capacity;
+        private long hits;
+        private long misses;
+        private double hitRate;
+    }
+
+    /**
+     * @param capacity number of entries, rounded up to power of two
+     */
+    public RenderCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * @param extent        number of bytes from p read by rendering
+     * @param relativeStart offset of rel8 or rel32 operand from p
+     * @param relativeSize  1 for rel8, 4 for rel32, 0 when instruction has no relative operand
+     * @return instruction rendered at addr or null when it isn't cached
+     */
+    InterpretedInstruction get(ByteBuffer code, int p, int extent, int relativeStart, int relativeSize, int pattern, int prefixes, int addr) {
+        Entry entry = slots.get(hash(code, p, extent, relativeStart, relativeSize, pattern, prefixes) & mask);
+
+        if (entry == null || !matches(entry, code, p, extent, relativeStart, relativeSize, pattern, prefixes)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+
+        if (relativeSize == 0) {
+            return new InterpretedInstruction(addr, entry.opcode, entry.mnemo, entry.operands[0], entry.operands[1], entry.operands[2]);
+        }
+
+        // Displacement differs between instructions with the same key
+        StringBuilder opcode = new StringBuilder(entry.opcode);
+        for (int i = relativeStart; i < relativeStart + relativeSize && 2 * i < opcode.length(); ++i) {
+            String digits = HexFormatter.byteHex(code.get(p + i));
+            opcode.setCharAt(2 * i, digits.charAt(0));
+            opcode.setCharAt(2 * i + 1, digits.charAt(1));
+        }
+
+        String displacement = relativeSize == 1 ? HexFormatter.byteHex(code.get(p + relativeStart)) : HexFormatter.dwordHex(code.getInt(p + relativeStart));
+        String[] operands = entry.operands.clone();
+        for (int j = 0; j < operands.length; ++j) {
+            if ((entry.relativeOperands & 1 << j) != 0) {
+                operands[j] = displacement;
+            }
+        }
+
+        return new InterpretedInstruction(addr, opcode.toString(), entry.mnemo, operands[0], operands[1], operands[2]);
+    }
+
+    /**
+     * @param relativeOperands bit j set when operand j of rendered instruction is relative displacement
+     */
+    void put(ByteBuffer code, int p, int extent, int relativeStart, int relativeSize, int pattern, int prefixes, InterpretedInstruction rendered, int relativeOperands) {
+        byte[] key = new byte[extent];
+        for (int i = 0; i < extent; ++i) {
+            key[i] = isRelative(i, relativeStart, relativeSize) ? 0 : code.get(p + i);
+        }
+
+        String[] operands = {rendered.getOp1(), rendered.getOp2(), rendered.getOp3()};
+        Entry entry = new Entry(key, pattern, prefixes, rendered.getOpcode(), rendered.getMnemo(), operands, relativeOperands);
+
+        slots.lazySet(hash(code, p, extent, relativeStart, relativeSize, pattern, prefixes) & mask, entry);
+    }
+
+    public Statistics getStatistics() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long lookups = hitCount + missCount;
+
+        return new Statistics(slots.length(), hitCount, missCount, lookups == 0 ? 0 : (double) hitCount / lookups);
+    }
+
+    private static boolean matches(Entry entry, ByteBuffer code, int p, int extent, int relativeStart, int relativeSize, int pattern, int prefixes) {
+        if (entry.pattern != pattern || entry.prefixes != prefixes || entry.key.length != extent) {
+            return false;
+        }
+
+        for (int i = 0; i < extent; ++i) {
+            if (!isRelative(i, relativeStart, relativeSize) && entry.key[i] != code.get(p + i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int hash(ByteBuffer code, int p, int extent, int relativeStart, int relativeSize, int pattern, int prefixes) {
+        int hash = pattern * 31 + prefixes;
+        for (int i = 0; i < extent; ++i) {
+            hash = hash * 31 + (isRelative(i, relativeStart, relativeSize) ? 0 : code.get(p + i));
+        }
+
+        // Spreading higher bits over the slot index
+        return hash ^ hash >>> 16;
+    }
+
+    private static boolean isRelative(int i, int relativeStart, int relativeSize) {
+        return i >= relativeStart && i < relativeStart + relativeSize;
+    }
+}
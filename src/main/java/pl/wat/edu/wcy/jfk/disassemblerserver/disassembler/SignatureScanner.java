@@ -0,0 +1,169 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds byte signatures with wildcards, such as {@code 55 8B EC ?? 83}, in code sections.
+ * <p>
+ * Signatures are compiled to bit-parallel shift-and automaton: every signature takes as many bits of
+ * state as it has bytes and signatures are packed into 64-bit words without crossing them. For every byte
+ * of code each word is shifted and masked once, so all signatures are matched in a single pass.
+ */
+public class SignatureScanner {
+    private static final int WORD_BITS = 64;
+
+    private final int words;
+    // Bits of positions accepting byte b are masks[b * words + w], wildcards are accepted by every byte
+    private final long[] masks;
+    // First and last bit of every signature
+    private final long[] starts;
+    private final long[] ends;
+    // Signature index and length by word and last bit
+    private final int[] signatureOfEnd;
+    private final int[] lengths;
+
+    @Getter
+    @AllArgsConstructor
+    public static class Match {
+        private int signature;
+        private int address;
+    }
+
+    private SignatureScanner(int words, long[] masks, long[] starts, long[] ends, int[] signatureOfEnd, int[] lengths) {
+        this.words = words;
+        this.masks = masks;
+        this.starts = starts;
+        this.ends = ends;
+        this.signatureOfEnd = signatureOfEnd;
+        this.lengths = lengths;
+    }
+
+    /**
+     * @param signatures hex bytes separated by spaces, ?? matches any byte
+     * @throws IllegalArgumentException when signature is empty, longer than 64 bytes or not hex
+     */
+    public static SignatureScanner compile(List<String> signatures) {
+        List<int[]> parsed = new ArrayList<>();
+        for (String signature : signatures) {
+            parsed.add(parse(signature));
+        }
+
+        // First fit of signatures into words
+        int[] wordOf = new int[parsed.size()];
+        int[] shiftOf = new int[parsed.size()];
+        List<Integer> used = new ArrayList<>();
+        for (int s = 0; s < parsed.size(); ++s) {
+            int length = parsed.get(s).length;
+
+            int w = 0;
+            while (w < used.size() && used.get(w) + length > WORD_BITS) {
+                ++w;
+            }
+            if (w == used.size()) {
+                used.add(0);
+            }
+
+            wordOf[s] = w;
+            shiftOf[s] = used.get(w);
+            used.set(w, used.get(w) + length);
+        }
+
+        int words = used.size();
+        long[] masks = new long[256 * words];
+        long[] starts = new long[words];
+        long[] ends = new long[words];
+        int[] signatureOfEnd = new int[words * WORD_BITS];
+        int[] lengths = new int[parsed.size()];
+
+        for (int s = 0; s < parsed.size(); ++s) {
+            int[] bytes = parsed.get(s);
+            int w = wordOf[s];
+
+            for (int i = 0; i < bytes.length; ++i) {
+                long bit = 1L << (shiftOf[s] + i);
+
+                if (bytes[i] < 0) {
+                    for (int b = 0; b < 256; ++b) {
+                        masks[b * words + w] |= bit;
+                    }
+                } else {
+                    masks[bytes[i] * words + w] |= bit;
+                }
+            }
+
+            int last = shiftOf[s] + bytes.length - 1;
+            starts[w] |= 1L << shiftOf[s];
+            ends[w] |= 1L << last;
+            signatureOfEnd[w * WORD_BITS + last] = s;
+            lengths[s] = bytes.length;
+        }
+
+        return new SignatureScanner(words, masks, starts, ends, signatureOfEnd, lengths);
+    }
+
+    /**
+     * @param maxMatches scanning stops after this many matches
+     * @return matches with virtual address of their first byte, ordered by address of their last byte
+     */
+    public List<Match> scan(List<ByteBuffer> machineCode, List<PEFile.Code.SectionTable> codeTables, int imageBase, int maxMatches) {
+        List<Match> matches = new ArrayList<>();
+        long[] state = new long[words];
+
+        for (int l = 0; l < machineCode.size() && matches.size() < maxMatches; ++l) {
+            ByteBuffer code = machineCode.get(l);
+            int base = imageBase + codeTables.get(l).getVirtualAdress();
+            int size = Math.min(Math.max(codeTables.get(l).getMisc(), 0), code.limit());
+
+            // Matches don't cross sections
+            Arrays.fill(state, 0);
+
+            for (int p = 0; p < size; ++p) {
+                int row = (code.get(p) & 0xFF) * words;
+
+                for (int w = 0; w < words; ++w) {
+                    long d = (state[w] << 1 | starts[w]) & masks[row + w];
+                    state[w] = d;
+
+                    long hits = d & ends[w];
+                    while (hits != 0) {
+                        int signature = signatureOfEnd[w * WORD_BITS + Long.numberOfTrailingZeros(hits)];
+                        matches.add(new Match(signature, base + p - lengths[signature] + 1));
+                        if (matches.size() == maxMatches) {
+                            return matches;
+                        }
+                        hits &= hits - 1;
+                    }
+                }
+            }
+        }
+
+        return matches;
+    }
+
+    // Signature bytes, -1 for wildcard
+    private static int[] parse(String signature) {
+        String[] tokens = signature.trim().split("\\s+");
+        if (signature.trim().isEmpty() || tokens.length > WORD_BITS) {
+            throw new IllegalArgumentException("Signature must have from 1 to " + WORD_BITS + " bytes: " + signature);
+        }
+
+        int[] bytes = new int[tokens.length];
+        for (int i = 0; i < tokens.length; ++i) {
+            if (tokens[i].equals("??") || tokens[i].equals("?")) {
+                bytes[i] = -1;
+            } else if (tokens[i].matches("[0-9A-Fa-f]{2}")) {
+                bytes[i] = Integer.parseInt(tokens[i], 16);
+            } else {
+                throw new IllegalArgumentException("Invalid byte " + tokens[i] + " in signature " + signature);
+            }
+        }
+
+        return bytes;
+    }
+}
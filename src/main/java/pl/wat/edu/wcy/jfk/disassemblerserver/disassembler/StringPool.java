@@ -0,0 +1,104 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import java.util.List;
+
+/**
+ * Canonical strings of rendered instructions: mnemonics with their prefixes and memory operands
+ * without displacement or with 8-bit displacement.
+ * <p>
+ * Every instruction rendered with the same text gets the same String instance instead of its own copy.
+ * Memory operands are created up front, mnemonics on first use.
+ */
+public class StringPool {
+    private static final String[] SCALES = {"", "*2", "*4", "*8"};
+
+    // Number of addition and segment indexes of one pattern
+    private static final int ADDITIONS = 8;
+    private static final int SEGMENTS = 8;
+
+    private final OpcodeTable opcodeTable;
+    private final String[] additions;
+    private final String[] segments;
+
+    // Filled on first use, threads racing for the same entry create equal strings
+    private final String[] mnemonics;
+
+    // [reg], [reg + disp8] by register and displacement
+    private final String[] registerIndirect = new String[8];
+    private final String[] displaced = new String[8 * 256];
+
+    // Index with scale, base with scaled index and the same in brackets, by SIB byte
+    private final String[] scaledIndexes = new String[256];
+    private final String[] sibAddresses = new String[256];
+    private final String[] sibIndirect = new String[256];
+
+    /**
+     * @param additions names of mnemonic additions, by index
+     * @param segments  names of segment override prefixes, by index
+     * @param registers names of 32-bit registers, by register number
+     */
+    public StringPool(OpcodeTable opcodeTable, ModRmTable modRmTable, String[] additions, String[] segments, List<String> registers) {
+        this.opcodeTable = opcodeTable;
+        this.additions = additions;
+        this.segments = segments;
+        this.mnemonics = new String[opcodeTable.size() * ADDITIONS * SEGMENTS];
+
+        for (int reg = 0; reg < 8; ++reg) {
+            registerIndirect[reg] = "[" + registers.get(reg) + "]";
+
+            for (int disp = 0; disp < 256; ++disp) {
+                displaced[reg << 8 | disp] = "[" + registers.get(reg) + " + " + HexFormatter.byteHex(disp) + "]";
+            }
+        }
+
+        for (int sib = 0; sib < 256; ++sib) {
+            scaledIndexes[sib] = modRmTable.hasNoIndex(sib) ? "" : registers.get(modRmTable.getIndex(sib)) + SCALES[modRmTable.getScale(sib)];
+
+            sibAddresses[sib] = registers.get(modRmTable.getBase(sib));
+            if (!scaledIndexes[sib].isEmpty()) {
+                sibAddresses[sib] = sibAddresses[sib] + " + " + scaledIndexes[sib];
+            }
+            sibIndirect[sib] = "[" + sibAddresses[sib] + "]";
+        }
+    }
+
+    /**
+     * @return mnemonic of pattern preceded by addition and, unless segment is one of operands, by segment
+     */
+    public String mnemonic(int pattern, int addition, int segment) {
+        int index = (pattern * ADDITIONS + addition) * SEGMENTS + segment;
+
+        String mnemonic = mnemonics[index];
+        if (mnemonic == null) {
+            mnemonic = additions[addition];
+            if (!opcodeTable.hasSegmentInOperands(pattern)) {
+                mnemonic = mnemonic + " " + segments[segment];
+            }
+            mnemonic = mnemonic + " " + opcodeTable.getMnemonic(pattern);
+
+            mnemonics[index] = mnemonic;
+        }
+
+        return mnemonic;
+    }
+
+    public String registerIndirect(int reg) {
+        return registerIndirect[reg];
+    }
+
+    public String displaced(int reg, int disp8) {
+        return displaced[reg << 8 | disp8 & 0xFF];
+    }
+
+    public String scaledIndex(int sib) {
+        return scaledIndexes[sib];
+    }
+
+    public String sibAddress(int sib) {
+        return sibAddresses[sib];
+    }
+
+    public String sibIndirect(int sib) {
+        return sibIndirect[sib];
+    }
+}
@@ -0,0 +1,122 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes instructions by looking their opcodes up in {@link OpcodeTable} and {@link ModRmTable}.
+ */
+public class TableInstructionDecoder {
+    // Prefix class of every byte: addition or segment bits it sets in packed prefixes and, above them,
+    // mask of its group, 0 for bytes which are not prefixes
+    static final int[] PREFIX_CLASSES = new int[256];
+    static final int PREFIX_STATE_MASK = 0xFF;
+    static final int PREFIX_GROUP_SHIFT = 8;
+
+    static {
+        int[] additionPrefixes = {0xF2, 0xF3, 0xF0, 0x66, 0x67};
+        for (int i = 0; i < additionPrefixes.length; ++i) {
+            PREFIX_CLASSES[additionPrefixes[i]] = MachineCodeInterpreter.ADDITION_MASK << PREFIX_GROUP_SHIFT | (i + 1);
+        }
+
+        int[] segmentPrefixes = {0x2E, 0x36, 0x3E, 0x26, 0x64, 0x65};
+        for (int i = 0; i < segmentPrefixes.length; ++i) {
+            PREFIX_CLASSES[segmentPrefixes[i]] = MachineCodeInterpreter.SEGMENT_MASK << MachineCodeInterpreter.SEGMENT_SHIFT << PREFIX_GROUP_SHIFT | (i + 1) << MachineCodeInterpreter.SEGMENT_SHIFT;
+        }
+    }
+
+    private final OpcodeTable opcodeTable;
+    private final ModRmTable modRmTable;
+
+    public TableInstructionDecoder(OpcodeTable opcodeTable, ModRmTable modRmTable) {
+        this.opcodeTable = opcodeTable;
+        this.modRmTable = modRmTable;
+    }
+
+    /**
+     * @param decoded receives pattern id (-1 for unknown opcode), packed prefixes and opcode byte,
+     *                at indexes given by MachineCodeInterpreter.DECODED_* constants
+     * @return length of instruction, 1 for unknown opcode
+     */
+    public int decodeInstruction(ByteBuffer code, int p, int[] decoded) {
+        int b = code.get(p) & 0xFF;
+
+        int map;
+        int priOpcodeSize;
+        int length;
+
+        // Consuming prefixes, later prefix of a group replaces earlier one
+        int pf = 0;
+        int state = 0;
+        int prefixClass = PREFIX_CLASSES[b];
+        while (prefixClass != 0) {
+            int next = code.get(p + pf + 1) & 0xFF;
+            // F2 before CMPS and SCAS is looked up with opcode
+            if (b == 0xF2 && ((next & 0xFE) == 0xA6 || (next & 0xFE) == 0xAE)) break;
+
+            state = state & ~(prefixClass >>> PREFIX_GROUP_SHIFT) | prefixClass & PREFIX_STATE_MASK;
+            ++pf;
+            b = next;
+            prefixClass = PREFIX_CLASSES[b];
+        }
+        priOpcodeSize = pf;
+        length = pf;
+
+        // Checking for instruction type
+        if (b == 0x0F) {
+            b = code.get(p + pf + 1) & 0xFF;
+            if (b == 0x0F) b = code.get(p + pf + 2) & 0xFF;
+
+            map = OpcodeTable.TWO_BYTE;
+            priOpcodeSize += 2;
+        } else {
+            map = OpcodeTable.ONE_BYTE;
+            priOpcodeSize += 1;
+        }
+
+        int instr = opcodeTable.getPattern(map, b);
+
+        if (instr < 0) {
+            decoded[MachineCodeInterpreter.DECODED_PATTERN] = -1;
+            decoded[MachineCodeInterpreter.DECODED_OPCODE] = b;
+            decoded[MachineCodeInterpreter.DECODED_PREFIXES] = map << MachineCodeInterpreter.MAP_SHIFT;
+            return 1;
+        }
+
+        // Trying to get second byte in one-byte instr or third byte in two-byte instr
+        boolean hasModRmByte = p + priOpcodeSize < code.limit();
+        if (hasModRmByte) {
+            int b2 = code.get(p + priOpcodeSize) & 0xFF;
+
+            switch (opcodeTable.getForm(instr)) {
+                case OpcodeTable.FORM_DIGIT:
+                    instr = opcodeTable.getDigitPattern(map, b, modRmTable.getReg(b2));
+                    // fall through
+                case OpcodeTable.FORM_MODRM:
+                    length += modRmTable.getLength(b2);
+
+                    // Checking for disp32 following SIB Byte
+                    if (modRmTable.hasSibDisplacement(b2) && p + priOpcodeSize + 1 < code.limit()
+                            && modRmTable.hasDisp32Base(code.get(p + priOpcodeSize + 1) & 0xFF)) {
+                        length += 4;
+                    }
+                    break;
+                case OpcodeTable.FORM_0F01:
+                    if (p + pf + 2 >= code.limit()) break;
+
+                    int extension = opcodeTable.get0F01Pattern(map, code.get(p + pf + 2) & 0xFF);
+                    if (extension >= 0) {
+                        instr = extension;
+                    }
+                    break;
+            }
+        }
+
+        length += opcodeTable.getLength(instr);
+
+        decoded[MachineCodeInterpreter.DECODED_PATTERN] = instr;
+        decoded[MachineCodeInterpreter.DECODED_OPCODE] = b;
+        decoded[MachineCodeInterpreter.DECODED_PREFIXES] = priOpcodeSize << MachineCodeInterpreter.PRIMARY_OPCODE_SIZE_SHIFT | map << MachineCodeInterpreter.MAP_SHIFT | state;
+
+        return length;
+    }
+}
@@ -0,0 +1,66 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Facts read from headers and section table of a file, without its sections.
+ */
+@Getter
+@AllArgsConstructor
+public class TriageReport {
+    private String name;
+    private boolean isPE;
+    private int imageBase;
+    private int addressOfEntryPoint;
+    private List<Section> sections;
+
+    // SizeOfCode from optional header and sum of raw sizes of code sections
+    private int sizeOfCode;
+    private int sizeOfCodeSections;
+    private boolean sizeOfCodeMatching;
+
+    @Getter
+    @AllArgsConstructor
+    public static class Section {
+        private String name;
+        private int virtualSize;
+        private int virtualAddress;
+        private int sizeOfRawData;
+        private int pointerToRawData;
+        private int characteristics;
+        private boolean code;
+    }
+
+    /**
+     * @param peFile file with headers read by {@link PEFile#readHeaders}, null when they couldn't be parsed
+     */
+    public static TriageReport of(String name, PEFile peFile) {
+        if (peFile == null || !peFile.isPE()) {
+            return new TriageReport(name, false, 0, 0, new ArrayList<>(), 0, 0, false);
+        }
+
+        List<Section> sections = new ArrayList<>();
+        for (PEFile.Code.SectionTable table : peFile.getSectionTables()) {
+            sections.add(new Section(new String(table.getName()).trim(), table.getMisc(), table.getVirtualAdress(), table.getSizeOfRawData(),
+                    table.getPointerToRawData(), table.getCharacteristics(), peFile.getCodeTables().contains(table)));
+        }
+
+        int sizeOfCodeSections = 0;
+        for (PEFile.Code.SectionTable table : peFile.getCodeTables()) {
+            sizeOfCodeSections += table.getSizeOfRawData();
+        }
+
+        return new TriageReport(name, true, peFile.getImageBase(), peFile.getAddressOfEntryPoint(), sections,
+                peFile.getSizeOfCode(), sizeOfCodeSections, sizeOfCodeSections == peFile.getSizeOfCode());
+    }
+
+    @JsonProperty("isPE")
+    public boolean isPE() {
+        return isPE;
+    }
+}
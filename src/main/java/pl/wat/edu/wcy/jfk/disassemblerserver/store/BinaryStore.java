@@ -0,0 +1,32 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.store;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory store of uploaded binaries, least recently used binaries are removed when store is full.
+ */
+@Component
+public class BinaryStore {
+    private final Map<String, StoredBinary> binaries;
+
+    public BinaryStore(@Value("${disassembler.store.max-binaries:16}") int maxBinaries) {
+        binaries = new LinkedHashMap<String, StoredBinary>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, StoredBinary> eldest) {
+                return size() > maxBinaries;
+            }
+        };
+    }
+
+    public synchronized StoredBinary get(String id) {
+        return binaries.get(id);
+    }
+
+    public synchronized void put(StoredBinary storedBinary) {
+        binaries.put(storedBinary.getId(), storedBinary);
+    }
+}
@@ -0,0 +1,38 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.store;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.CheckpointIndex;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.CrossReferenceIndex;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.FunctionTable;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.ImportTable;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.PEFile;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Uploaded binary kept between requests, identified by SHA-256 of the file.
+ */
+@Getter
+@AllArgsConstructor
+public class StoredBinary {
+    private String id;
+    private int imageBase;
+    private int addressOfEntryPoint;
+
+    @JsonIgnore
+    private List<ByteBuffer> machineCode;
+    @JsonIgnore
+    private List<PEFile.Code.SectionTable> codeTables;
+
+    private FunctionTable functionTable;
+    @JsonIgnore
+    private CrossReferenceIndex crossReferenceIndex;
+    @JsonIgnore
+    private CheckpointIndex checkpointIndex;
+    // Null when binary has no imports
+    @JsonIgnore
+    private ImportTable importTable;
+}
@@ -0,0 +1,132 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.controllers;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import pl.wat.edu.wcy.jfk.disassemblerserver.App;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.InstructionTableSnapshot;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.MinimalPE;
+
+import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Binary uploaded once is queried by its id.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+public class BinaryControllerTests {
+    private static final int ENTRY_POINT = MinimalPE.IMAGE_BASE + MinimalPE.TEXT_RVA;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    private String id;
+
+    @BeforeClass
+    public static void createInterpreter() {
+        if (App.machineCodeInterpreter == null) {
+            App.machineCodeInterpreter = InstructionTableSnapshot.createInterpreter("i386.pdf");
+        }
+    }
+
+    @Before
+    public void uploadMinimalPE() throws Exception {
+        id = upload(MinimalPE.build());
+    }
+
+    @Test
+    public void onlyEntryPointIsAFunction() throws Exception {
+        // RET at the start of CODE section is neither called nor preceded by a prologue
+        mockMvc.perform(get("/binaries/" + id + "/functions"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[" + ENTRY_POINT + "]"));
+    }
+
+    @Test
+    public void functionIsDecodedFromItsStart() throws Exception {
+        mockMvc.perform(get("/binaries/" + id + "/functions/" + Integer.toHexString(ENTRY_POINT)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].addr").value(ENTRY_POINT))
+                .andExpect(jsonPath("$[0].opcode").value("55"))
+                .andExpect(jsonPath("$[1].opcode").value("8BEC"))
+                .andExpect(jsonPath("$[2].opcode").value("FF1560304000"));
+    }
+
+    @Test
+    public void crossReferencesAreFoundByTarget() throws Exception {
+        // CALL to CODE section and JMP back to entry point after CALL [ExitProcess]
+        ByteBuffer image = ByteBuffer.wrap(MinimalPE.build()).order(ByteOrder.LITTLE_ENDIAN);
+        image.put(0x409, (byte) 0xE8).putInt(0x40A, 0xFF2);
+        image.put(0x40E, (byte) 0xEB).put(0x40F, (byte) 0xF0);
+        String patchedId = upload(image.array());
+
+        mockMvc.perform(get("/binaries/" + patchedId + "/xrefs/402000"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[" + (ENTRY_POINT + 0x09) + "]"));
+        mockMvc.perform(get("/binaries/" + patchedId + "/xrefs/" + Integer.toHexString(ENTRY_POINT)))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[" + (ENTRY_POINT + 0x0E) + "]"));
+        mockMvc.perform(get("/binaries/" + patchedId + "/xrefs/401009"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]"));
+        mockMvc.perform(get("/binaries/" + patchedId + "/xrefs/xyz"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    public void signaturesAreFoundInCodeSections() throws Exception {
+        mockMvc.perform(post("/binaries/" + id + "/signatures")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[\"55 8B EC ?? 15\", \"C3\"]"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{signature: 0, address: " + ENTRY_POINT + "}, "
+                        + "{signature: 1, address: " + (MinimalPE.IMAGE_BASE + MinimalPE.CODE_RVA) + "}]"));
+    }
+
+    @Test
+    public void invalidSignatureIsNotScanned() throws Exception {
+        mockMvc.perform(post("/binaries/" + id + "/signatures")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[\"55 8B EC\", \"8B EG\"]"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    public void unknownBinaryHasNoFunctions() throws Exception {
+        mockMvc.perform(get("/binaries/0000/functions"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(""));
+    }
+
+    // Id of uploaded binary is SHA-256 of its content
+    private String upload(byte[] image) throws Exception {
+        String id = new HexBinaryAdapter().marshal(MessageDigest.getInstance("SHA-256").digest(image)).toLowerCase();
+
+        mockMvc.perform(multipart("/binaries").file(FileControllerTests.upload(image)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(id))
+                .andExpect(jsonPath("$.addressOfEntryPoint").value(ENTRY_POINT));
+
+        return id;
+    }
+}
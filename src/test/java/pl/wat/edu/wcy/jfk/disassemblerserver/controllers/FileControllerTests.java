@@ -0,0 +1,64 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.controllers;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import pl.wat.edu.wcy.jfk.disassemblerserver.App;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.InstructionTableSnapshot;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.MinimalPE;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+public class FileControllerTests {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeClass
+    public static void createInterpreter() {
+        if (App.machineCodeInterpreter == null) {
+            App.machineCodeInterpreter = InstructionTableSnapshot.createInterpreter("i386.pdf");
+        }
+    }
+
+    @Test
+    public void listingIsStreamedAsText() throws Exception {
+        MvcResult result = mockMvc.perform(multipart("/file/listing").file(upload(MinimalPE.build())))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(startsWith("; section .text at 00401000\n"
+                        + "00401000   55    PUSH EBP\n"
+                        + "00401001   8BEC    MOV EBP, ESP\n")));
+    }
+
+    @Test
+    public void listingOfFileWithoutPeSignatureIsEmpty() throws Exception {
+        byte[] image = MinimalPE.build();
+        image[0x40] = 'N';
+
+        mockMvc.perform(multipart("/file/listing").file(upload(image)))
+                .andExpect(status().isOk())
+                .andExpect(content().string(""));
+    }
+
+    static MockMultipartFile upload(byte[] image) {
+        return new MockMultipartFile("file", "minimal.exe", "application/octet-stream", image);
+    }
+}
@@ -0,0 +1,87 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.controllers;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import pl.wat.edu.wcy.jfk.disassemblerserver.App;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.InstructionTableSnapshot;
+import pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.MinimalPE;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+public class TriageControllerTests {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeClass
+    public static void createInterpreter() {
+        if (App.machineCodeInterpreter == null) {
+            App.machineCodeInterpreter = InstructionTableSnapshot.createInterpreter("i386.pdf");
+        }
+    }
+
+    @Test
+    public void headersAndSectionTableAreReported() throws Exception {
+        mockMvc.perform(multipart("/triage").file(FileControllerTests.upload(MinimalPE.build())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("minimal.exe"))
+                .andExpect(jsonPath("$.isPE").value(true))
+                .andExpect(jsonPath("$.imageBase").value(MinimalPE.IMAGE_BASE))
+                .andExpect(jsonPath("$.addressOfEntryPoint").value(MinimalPE.IMAGE_BASE + MinimalPE.TEXT_RVA))
+                .andExpect(jsonPath("$.sections.length()").value(3))
+                .andExpect(jsonPath("$.sections[0].name").value(".text"))
+                .andExpect(jsonPath("$.sections[0].virtualAddress").value(MinimalPE.TEXT_RVA))
+                .andExpect(jsonPath("$.sections[0].pointerToRawData").value(0x400))
+                .andExpect(jsonPath("$.sections[1].code").value(true))
+                .andExpect(jsonPath("$.sections[2].name").value(".idata"))
+                .andExpect(jsonPath("$.sections[2].code").value(false))
+                .andExpect(jsonPath("$.sizeOfCode").value(0x300))
+                .andExpect(jsonPath("$.sizeOfCodeSections").value(0x300))
+                .andExpect(jsonPath("$.sizeOfCodeMatching").value(true));
+    }
+
+    @Test
+    public void fileWithoutPEHeaderIsReportedAsNotPE() throws Exception {
+        mockMvc.perform(multipart("/triage").file(new MockMultipartFile("file", "notes.txt", "text/plain", "Not an executable".getBytes())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("notes.txt"))
+                .andExpect(jsonPath("$.isPE").value(false))
+                .andExpect(jsonPath("$.sections.length()").value(0));
+    }
+
+    @Test
+    public void filesAreReportedInOrderOfUpload() throws Exception {
+        // SizeOfCode not counting CODE section, PE header offset past the end of file
+        ByteBuffer understated = ByteBuffer.wrap(MinimalPE.build()).order(ByteOrder.LITTLE_ENDIAN);
+        understated.putInt(0x40 + 0x1C, 0x200);
+        ByteBuffer truncated = ByteBuffer.allocate(0x40).order(ByteOrder.LITTLE_ENDIAN);
+        truncated.putShort(0, (short) 0x5A4D).putInt(0x3C, 0x1000);
+
+        mockMvc.perform(multipart("/triage/batch")
+                .file(new MockMultipartFile("files", "understated.exe", "application/octet-stream", understated.array()))
+                .file(new MockMultipartFile("files", "truncated.exe", "application/octet-stream", truncated.array())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].name").value("understated.exe"))
+                .andExpect(jsonPath("$[0].isPE").value(true))
+                .andExpect(jsonPath("$[0].sizeOfCode").value(0x200))
+                .andExpect(jsonPath("$[0].sizeOfCodeSections").value(0x300))
+                .andExpect(jsonPath("$[0].sizeOfCodeMatching").value(false))
+                .andExpect(jsonPath("$[1].name").value("truncated.exe"))
+                .andExpect(jsonPath("$[1].isPE").value(false));
+    }
+}
@@ -0,0 +1,84 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Range decoded from the nearest checkpoint gives the same instructions as linear sweep of the whole section.
+ */
+public class CheckpointIndexTests {
+    private static final int IMAGE_BASE = 0x400000;
+    private static final int PAGE = 0x1000;
+
+    private static MachineCodeInterpreter interpreter;
+
+    @BeforeClass
+    public static void createInterpreter() {
+        interpreter = InstructionTableSnapshot.createInterpreter("i386.pdf");
+    }
+
+    @Test
+    public void instructionCrossingPageBoundaryIsFoundFromPreviousPage() {
+        // MOV EAX, imm32 instructions of 5 bytes, the one at 0FFF crosses the page boundary
+        PEFile peFile = new PEFile(movs(2 * PAGE));
+        CheckpointIndex checkpointIndex = index(peFile, PAGE);
+
+        List<InterpretedInstruction> range = checkpointIndex.decode(IMAGE_BASE + PAGE, 1);
+
+        assertEquals(1, range.size());
+        assertEquals(IMAGE_BASE + PAGE - 1, range.get(0).getAddr());
+        assertEquals("B878787878", range.get(0).getOpcode());
+    }
+
+    @Test
+    public void rangesEqualFullSweep() {
+        PEFile peFile = new PEFile(movs(2 * PAGE));
+        DecodedSection sweep = interpreter.decode(peFile.getMachineCode().get(0), peFile.getCodeTables().get(0), IMAGE_BASE);
+
+        for (int interval : new int[]{1, 16, PAGE}) {
+            CheckpointIndex checkpointIndex = index(peFile, interval);
+
+            for (int offset : new int[]{0, 3, PAGE - 2, PAGE, PAGE + 3, 2 * PAGE - 1}) {
+                List<InterpretedInstruction> range = checkpointIndex.decode(IMAGE_BASE + offset, 12);
+
+                // First instruction overlapping the range
+                int first = offset / 5;
+                assertEquals(Math.min(sweep.size(), (offset + 12 + 4) / 5) - first, range.size());
+                for (int i = 0; i < range.size(); ++i) {
+                    assertEquals(sweep.get(first + i).toString(), range.get(i).toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void addressOutsideOfCodeGivesEmptyRange() {
+        CheckpointIndex checkpointIndex = index(new PEFile(movs(PAGE)), PAGE);
+
+        assertTrue(checkpointIndex.decode(IMAGE_BASE - 1, 16).isEmpty());
+        assertTrue(checkpointIndex.decode(IMAGE_BASE + PAGE, 16).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void intervalMustBePositive() {
+        index(new PEFile(movs(PAGE)), 0);
+    }
+
+    private static CheckpointIndex index(PEFile peFile, int interval) {
+        return new CheckpointIndex(interpreter, peFile.getMachineCode(), peFile.getCodeTables(), IMAGE_BASE, interval);
+    }
+
+    // MOV EAX, 78787878 repeated, last one is cut off unless size is a multiple of 5
+    private static byte[] movs(int size) {
+        byte[] code = new byte[size];
+        for (int p = 0; p < size; ++p) {
+            code[p] = (byte) (p % 5 == 0 ? 0xB8 : 0x78);
+        }
+        return code;
+    }
+}
@@ -0,0 +1,70 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.ControlFlowGraph.EDGE_FALLTHROUGH;
+import static pl.wat.edu.wcy.jfk.disassemblerserver.disassembler.ControlFlowGraph.EDGE_JUMP;
+
+public class ControlFlowGraphTests {
+    private static final int IMAGE_BASE = 0x400000;
+
+    // Loop with a conditional exit over a call
+    static final byte[] LOOP = RecursiveTraversalTests.bytes(
+            0x55,                                   // 00 PUSH EBP
+            0x8B, 0xEC,                             // 01 MOV EBP, ESP
+            0x85, 0xC0,                             // 03 TEST EAX, EAX
+            0x74, 0x05,                             // 05 JZ 0C
+            0xE8, 0x00, 0x00, 0x00, 0x00,           // 07 CALL 0C
+            0x40,                                   // 0C INC EAX
+            0xEB, 0xF4,                             // 0D JMP 03
+            0xC3);                                  // 0F RET
+
+    private static MachineCodeInterpreter interpreter;
+
+    @BeforeClass
+    public static void createInterpreter() {
+        interpreter = InstructionTableSnapshot.createInterpreter("i386.pdf");
+    }
+
+    @Test
+    public void blocksEndAtJumpsAndStartAtTargets() {
+        PEFile peFile = new PEFile(LOOP);
+        ControlFlowGraph graph = ControlFlowGraph.build(interpreter.decode(peFile.getMachineCode().get(0), peFile.getCodeTables().get(0), IMAGE_BASE));
+
+        assertArrayEquals(addresses(0x00, 0x03, 0x07, 0x0C, 0x0F), graph.getBlockAddresses());
+        assertArrayEquals(new int[]{3, 4, 5, 3, 1}, graph.getBlockSizes());
+        assertArrayEquals(new int[]{2, 2, 1, 2, 1}, graph.getInstructionCounts());
+
+        // Call doesn't end its block, jump back to the test has no fall through edge, return has no edges
+        assertArrayEquals(new int[]{0, 1, 3, 4, 5, 5}, graph.getEdgeOffsets());
+        assertArrayEquals(new int[]{1, 3, 2, 3, 1}, graph.getEdgeTargets());
+        assertArrayEquals(new byte[]{EDGE_FALLTHROUGH, EDGE_JUMP, EDGE_FALLTHROUGH, EDGE_FALLTHROUGH, EDGE_JUMP}, graph.getEdgeTypes());
+    }
+
+    @Test
+    public void blocksAreSplitAtGapsOfRecursiveTraversal() {
+        PEFile peFile = new PEFile(RecursiveTraversalTests.CODE);
+        RecursiveTraversal recursiveTraversal = new RecursiveTraversal(interpreter, peFile.getMachineCode(), peFile.getCodeTables(), IMAGE_BASE);
+        List<DecodedSection> sections = recursiveTraversal.traverse(new int[]{IMAGE_BASE}, null, 1);
+
+        ControlFlowGraph graph = ControlFlowGraph.build(sections.get(0));
+
+        assertArrayEquals(addresses(0x00, 0x07, 0x0D, 0x10, 0x14), graph.getBlockAddresses());
+        // Indirect jump has no known successor, RET at 0D isn't followed by PUSH at 10
+        assertArrayEquals(new int[]{0, 2, 2, 2, 3, 3}, graph.getEdgeOffsets());
+        assertArrayEquals(new int[]{2, 1, 4}, graph.getEdgeTargets());
+        assertArrayEquals(new byte[]{EDGE_JUMP, EDGE_FALLTHROUGH, EDGE_JUMP}, graph.getEdgeTypes());
+    }
+
+    private static int[] addresses(int... offsets) {
+        int[] addresses = new int[offsets.length];
+        for (int i = 0; i < offsets.length; ++i) {
+            addresses[i] = IMAGE_BASE + offsets[i];
+        }
+        return addresses;
+    }
+}
@@ -0,0 +1,48 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CrossReferenceIndexTests {
+    private static final int IMAGE_BASE = 0x400000;
+
+    private static MachineCodeInterpreter interpreter;
+
+    @BeforeClass
+    public static void createInterpreter() {
+        interpreter = InstructionTableSnapshot.createInterpreter("i386.pdf");
+    }
+
+    @Test
+    public void callsAndJumpsAreIndexedByTarget() {
+        PEFile peFile = new PEFile(ControlFlowGraphTests.LOOP);
+        DecodedSection decodedSection = interpreter.decode(peFile.getMachineCode().get(0), peFile.getCodeTables().get(0), IMAGE_BASE);
+
+        CrossReferenceIndex crossReferenceIndex = CrossReferenceIndex.build(Collections.singletonList(decodedSection));
+
+        // JZ and CALL to INC, JMP back to TEST
+        assertEquals(3, crossReferenceIndex.size());
+        assertArrayEquals(new int[]{IMAGE_BASE + 0x05, IMAGE_BASE + 0x07}, crossReferenceIndex.getReferences(IMAGE_BASE + 0x0C));
+        assertArrayEquals(new int[]{IMAGE_BASE + 0x0D}, crossReferenceIndex.getReferences(IMAGE_BASE + 0x03));
+        assertEquals(2, crossReferenceIndex.getReferenceCount(IMAGE_BASE + 0x0C));
+    }
+
+    @Test
+    public void addressesWithoutReferencesHaveNone() {
+        PEFile peFile = new PEFile(ControlFlowGraphTests.LOOP);
+        DecodedSection decodedSection = interpreter.decode(peFile.getMachineCode().get(0), peFile.getCodeTables().get(0), IMAGE_BASE);
+
+        CrossReferenceIndex crossReferenceIndex = CrossReferenceIndex.build(Collections.singletonList(decodedSection));
+
+        assertArrayEquals(new int[0], crossReferenceIndex.getReferences(IMAGE_BASE));
+        assertArrayEquals(new int[0], crossReferenceIndex.getReferences(IMAGE_BASE + 0x0F));
+        assertArrayEquals(new int[0], crossReferenceIndex.getReferences(-1));
+        assertEquals(0, crossReferenceIndex.getReferenceCount(IMAGE_BASE + 0x100));
+        assertEquals(0, CrossReferenceIndex.build(Collections.<DecodedSection>emptyList()).size());
+    }
+}
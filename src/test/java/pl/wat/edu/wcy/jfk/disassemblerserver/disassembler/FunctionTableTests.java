@@ -0,0 +1,51 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FunctionTableTests {
+    private static final int IMAGE_BASE = 0x400000;
+
+    private static final byte[] CODE = RecursiveTraversalTests.bytes(
+            0x55, 0x8B, 0xEC,                       // 00 PUSH EBP; MOV EBP, ESP
+            0xE8, 0x08, 0x00, 0x00, 0x00,           // 03 CALL 10
+            0x5D, 0xC3,                             // 08 POP EBP; RET
+            0xB8, 0x55, 0x8B, 0xEC, 0x00,           // 0A MOV EAX, 00EC8B55
+            0x90,                                   // 0F NOP
+            0xC3,                                   // 10 RET
+            0x55, 0x89, 0xE5,                       // 11 PUSH EBP; MOV EBP, ESP
+            0x5D, 0xC3);                            // 14 POP EBP; RET
+
+    private static MachineCodeInterpreter interpreter;
+
+    @BeforeClass
+    public static void createInterpreter() {
+        interpreter = InstructionTableSnapshot.createInterpreter("i386.pdf");
+    }
+
+    @Test
+    public void prologuesInsideInstructionsAreNotRoots() {
+        PEFile peFile = new PEFile(CODE);
+
+        int[] roots = FunctionTable.findRoots(interpreter, peFile.getMachineCode(), peFile.getCodeTables(), IMAGE_BASE, IMAGE_BASE);
+
+        assertArrayEquals(new int[]{IMAGE_BASE, IMAGE_BASE, IMAGE_BASE + 0x11}, roots);
+    }
+
+    @Test
+    public void callTargetsOfReachableCodeAreFunctions() {
+        PEFile peFile = new PEFile(CODE);
+        int[] roots = FunctionTable.findRoots(interpreter, peFile.getMachineCode(), peFile.getCodeTables(), IMAGE_BASE, IMAGE_BASE);
+        RecursiveTraversal recursiveTraversal = new RecursiveTraversal(interpreter, peFile.getMachineCode(), peFile.getCodeTables(), IMAGE_BASE);
+
+        FunctionTable functionTable = FunctionTable.build(roots, recursiveTraversal.traverse(roots, null, 1), peFile.getCodeTables(), IMAGE_BASE);
+
+        assertArrayEquals(new int[]{IMAGE_BASE, IMAGE_BASE + 0x10, IMAGE_BASE + 0x11}, functionTable.getStarts());
+        assertTrue(functionTable.contains(IMAGE_BASE + 0x10));
+        assertFalse(functionTable.contains(IMAGE_BASE + 0x0B));
+    }
+}
@@ -0,0 +1,98 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Instructions are rendered the same as by the original interpreter, which parsed instruction patterns
+ * on every start and decoded lists of boxed bytes.
+ * <p>
+ * Every case in golden files is a line of hex bytes followed by lines of instructions starting in them,
+ * as offset|opcode|mnemonic|operand|operand|operand. Cases are decoded with padding of NOPs, so the last
+ * instruction isn't cut off.
+ */
+public class GoldenOutputTests {
+    private static final int IMAGE_BASE = 0x400000;
+    private static final int PADDING = 16;
+
+    private static MachineCodeInterpreter interpreter;
+
+    @BeforeClass
+    public static void createInterpreter() {
+        interpreter = InstructionTableSnapshot.createInterpreter("i386.pdf");
+    }
+
+    // Every opcode of both maps with register and SIB operands, with and without legacy prefixes, and a sample
+    // function; prefix before 0F 0F was dropped by the original interpreter, such cases aren't in the corpus
+    @Test
+    public void opcodesAreRenderedAsByOriginalInterpreter() throws IOException {
+        assertGolden(interpreter, "/golden/instructions.txt");
+    }
+
+    // Every ModR/M byte, every SIB byte with no, 8-bit and 32-bit displacement
+    @Test
+    public void modRmAndSibFormsAreRenderedAsByOriginalInterpreter() throws IOException {
+        assertGolden(interpreter, "/golden/modrm.txt");
+    }
+
+    // Cached text of the first pass is reused by the second one, relative operands are replaced with own displacement
+    @Test
+    public void renderCacheGivesTheSameOutput() throws IOException {
+        MachineCodeInterpreter cachingInterpreter = InstructionTableSnapshot.createInterpreter("i386.pdf");
+        cachingInterpreter.useRenderCache(1 << 16);
+
+        for (int pass = 0; pass < 2; ++pass) {
+            assertGolden(cachingInterpreter, "/golden/instructions.txt");
+            assertGolden(cachingInterpreter, "/golden/modrm.txt");
+        }
+
+        assertTrue(cachingInterpreter.getRenderCache().getStatistics().getHits() > 0);
+    }
+
+    private static void assertGolden(MachineCodeInterpreter interpreter, String resource) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(GoldenOutputTests.class.getResourceAsStream(resource), StandardCharsets.UTF_8))) {
+            for (String bytes = reader.readLine(); bytes != null; bytes = reader.readLine()) {
+                List<String> expected = new ArrayList<>();
+                for (String line = reader.readLine(); line != null && !line.isEmpty(); line = reader.readLine()) {
+                    expected.add(line);
+                }
+
+                assertEquals(bytes, expected, render(interpreter, bytes));
+            }
+        }
+    }
+
+    // Instructions starting in given bytes, in the same form as in golden files
+    private static List<String> render(MachineCodeInterpreter interpreter, String bytes) {
+        String[] values = bytes.split(" ");
+        byte[] code = new byte[values.length + PADDING];
+        for (int i = 0; i < code.length; ++i) {
+            code[i] = i < values.length ? (byte) Integer.parseInt(values[i], 16) : (byte) 0x90;
+        }
+
+        PEFile peFile = new PEFile(code);
+        DecodedSection section = interpreter.decode(ByteBuffer.wrap(code), peFile.getCodeTables().get(0), IMAGE_BASE);
+
+        List<String> lines = new ArrayList<>();
+        for (InterpretedInstruction instruction : section) {
+            int offset = instruction.getAddr() - IMAGE_BASE;
+            if (offset >= values.length) {
+                break;
+            }
+            lines.add(offset + "|" + instruction.getOpcode() + "|" + instruction.getMnemo() + "|" + instruction.getOp1() + "|" + instruction.getOp2() + "|" + instruction.getOp3());
+        }
+
+        return lines;
+    }
+}
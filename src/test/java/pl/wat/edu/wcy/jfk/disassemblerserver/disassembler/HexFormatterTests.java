@@ -0,0 +1,38 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Hex digits are the same as written by {@link String#format}, which rendered operands before.
+ */
+public class HexFormatterTests {
+    private static final int[] VALUES = {0, 1, 0x7F, 0x80, 0xFF, 0x100, 0x7FFF, 0x8000, 0xFFFF, 0x10000, 0x12345, 0x7FFFFFFF,
+            -1, -2, -0x80, -0x81, -0x7FFF, -0x8000, -0x8001, Integer.MIN_VALUE};
+
+    @Test
+    public void wordHasAtLeastFourDigits() {
+        for (int value : VALUES) {
+            assertEquals(String.format("%04X", value), HexFormatter.appendWord(new StringBuilder(), value).toString());
+        }
+    }
+
+    @Test
+    public void signExtendedWordHasEightDigits() {
+        // imm16 is read as signed short
+        assertEquals("FFFF8000", HexFormatter.appendWord(new StringBuilder(), (short) 0x8000).toString());
+        assertEquals("FFFFFFFF", HexFormatter.appendWord(new StringBuilder(), (short) 0xFFFF).toString());
+        assertEquals("7FFF", HexFormatter.appendWord(new StringBuilder(), (short) 0x7FFF).toString());
+    }
+
+    @Test
+    public void bytesAndDwords() {
+        for (int value : VALUES) {
+            assertEquals(String.format("%02X", (byte) value), HexFormatter.byteHex(value));
+            assertEquals(String.format("%02X", value & 0xFF), HexFormatter.appendByte(new StringBuilder(), value).toString());
+            assertEquals(String.format("%08X", value), HexFormatter.dwordHex(value));
+            assertEquals("[" + String.format("%08X", value), HexFormatter.appendDword(new StringBuilder("["), value).toString());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ImportTableTests {
+    @Test
+    public void importsAreReadFromMinimalPe32() {
+        ImportTable importTable = new PEFile(ByteBuffer.wrap(MinimalPE.build())).getImportTable();
+
+        assertEquals(2, importTable.size());
+        assertEquals("KERNEL32.dll!ExitProcess", importTable.getSymbol(MinimalPE.EXIT_PROCESS_SLOT));
+        assertEquals("KERNEL32.dll!#5", importTable.getSymbol(MinimalPE.ORDINAL_SLOT));
+        assertNull(importTable.getSymbol(MinimalPE.ORDINAL_SLOT + 4));
+        assertNull(importTable.getSymbol(MinimalPE.EXIT_PROCESS_SLOT - MinimalPE.IMAGE_BASE));
+    }
+
+    @Test
+    public void descriptorsSharingTablesAreReadOnce() {
+        // Every descriptor of the directory points at the same lookup and address tables
+        ByteBuffer section = ByteBuffer.allocate(0x1000).order(ByteOrder.LITTLE_ENDIAN);
+        for (int d = 0; d < 0x800; d += 20) {
+            section.putInt(d, 0x1800);
+            section.putInt(d + 12, 0x1900);
+            section.putInt(d + 16, 0x1800);
+        }
+        for (int t = 0x800; t < 0x900; t += 4) {
+            section.putInt(t, 0x80000001);
+        }
+        section.put(0x900, (byte) 'A');
+
+        ImportTable importTable = new ImportTable(section, 0x1000, 0x1000, 0);
+
+        assertEquals(64, importTable.size());
+        assertEquals("A!#1", importTable.getSymbol(0x1800));
+    }
+
+    @Test
+    public void namesOutsideOfSectionAreSkipped() {
+        ByteBuffer section = ByteBuffer.allocate(0x100).order(ByteOrder.LITTLE_ENDIAN);
+        section.putInt(0, 0x1040);
+        section.putInt(12, 0x10F0);
+        section.putInt(16, 0x1040);
+        section.putInt(0x40, 0x7FFF0000);
+        section.putInt(0x44, 0x80000002);
+        section.put(0xF0, (byte) 'B');
+
+        ImportTable importTable = new ImportTable(section, 0x1000, 0x1000, 0);
+
+        assertEquals(1, importTable.size());
+        assertNull(importTable.getSymbol(0x1040));
+        assertEquals("B!#2", importTable.getSymbol(0x1044));
+    }
+}
@@ -0,0 +1,99 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sections of one upload are decoded while it is read, no more of them at the same time than allowed,
+ * the same for streamed and mapped uploads.
+ */
+public class IngestPipelineTests {
+    private static MachineCodeInterpreter interpreter;
+
+    @BeforeClass
+    public static void createInterpreter() {
+        interpreter = InstructionTableSnapshot.createInterpreter("i386.pdf");
+    }
+
+    @Test
+    public void sectionsAreDecodedOneAtATimeWhenLimitedToOne() throws IOException {
+        SlowExecutor executor = new SlowExecutor();
+
+        IngestPipeline.Result result = new IngestPipeline(interpreter, executor, 1).ingest(new ByteArrayInputStream(MinimalPE.build()));
+
+        assertEquals(2, result.getDecodedSections().size());
+        assertEquals(1, executor.maxRunning.get());
+    }
+
+    @Test
+    public void sectionsEqualLinearSweep() throws IOException {
+        byte[] image = MinimalPE.build();
+
+        IngestPipeline.Result result = new IngestPipeline(interpreter, new SlowExecutor(), 4).ingest(new ByteArrayInputStream(image));
+        PEFile peFile = result.getPeFile();
+
+        for (int l = 0; l < 2; ++l) {
+            DecodedSection expected = interpreter.decode(peFile.getMachineCode().get(l), peFile.getCodeTables().get(l), MinimalPE.IMAGE_BASE);
+            DecodedSection actual = result.getDecodedSections().get(l);
+
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); ++i) {
+                assertEquals(expected.get(i).toString(), actual.get(i).toString());
+            }
+        }
+        assertEquals(64, result.getId().length());
+    }
+
+    @Test
+    public void mappedUploadIsReadInPlaceWithTheSameIdAndSections() throws IOException {
+        byte[] image = MinimalPE.build();
+        IngestPipeline ingestPipeline = new IngestPipeline(interpreter, ForkJoinPool.commonPool(), 4);
+
+        IngestPipeline.Result streamed = ingestPipeline.ingest(new ByteArrayInputStream(image));
+        IngestPipeline.Result mapped;
+        File[] spooled = new File[1];
+        try (MappedUpload upload = new MappedUpload(file -> Files.write((spooled[0] = file).toPath(), image))) {
+            mapped = ingestPipeline.ingest(upload);
+        }
+
+        assertFalse(spooled[0].exists());
+        assertEquals(streamed.getId(), mapped.getId());
+        assertTrue(mapped.getPeFile().getMachineCode().get(0).isDirect());
+        for (int l = 0; l < 2; ++l) {
+            assertEquals(streamed.getDecodedSections().get(l).toString(), mapped.getDecodedSections().get(l).toString());
+        }
+    }
+
+    // Every task waits in its own thread before it runs, largest number of tasks waiting together is recorded
+    private static class SlowExecutor implements Executor {
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxRunning = new AtomicInteger();
+
+        @Override
+        public void execute(Runnable command) {
+            new Thread(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // Finished before the task completes its section and lets next one be submitted
+                running.decrementAndGet();
+                command.run();
+            }).start();
+        }
+    }
+}
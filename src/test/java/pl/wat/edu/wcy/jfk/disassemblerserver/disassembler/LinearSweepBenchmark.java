@@ -0,0 +1,107 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Linear sweep of the same code by {@link MachineCodeInterpreter#scan}, which only finds instruction boundaries,
+ * by {@link MachineCodeInterpreter#decode}, which also keeps patterns and prefixes, and by interpret,
+ * which renders every instruction to text.
+ * <p>
+ * Code is built from encodings common in compiled code, so no byte is skipped as unknown opcode.
+ * Run with main method from test classpath, in directory with i386.pdf when instruction table snapshot is stale.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinearSweepBenchmark {
+    private static final int SIZE = 1 << 20;
+    private static final int IMAGE_BASE = 0x400000;
+
+    // Encodings with -1 for bytes of immediates and displacements, which are random
+    private static final int[][] ENCODINGS = {
+            {0x55},                                     // PUSH EBP
+            {0x8B, 0xEC},                               // MOV EBP, ESP
+            {0x8B, 0x45, -1},                           // MOV EAX, [EBP + disp8]
+            {0x89, 0x84, 0x8E, -1, -1, -1, -1},         // MOV [ESI + ECX * 4 + disp32], EAX
+            {0x8D, 0x4E, -1},                           // LEA ECX, [ESI + disp8]
+            {0x85, 0xC0},                               // TEST EAX, EAX
+            {0x83, 0xC4, -1},                           // ADD ESP, imm8
+            {0x3D, -1, -1, -1, -1},                     // CMP EAX, imm32
+            {0xB8, -1, -1, -1, -1},                     // MOV EAX, imm32
+            {0x6A, -1},                                 // PUSH imm8
+            {0xFF, 0x15, -1, -1, -1, -1},               // CALL [disp32]
+            {0xE8, -1, -1, -1, -1},                     // CALL rel32
+            {0x75, -1},                                 // JNE rel8
+            {0x0F, 0x85, -1, -1, -1, -1},               // JNE rel32
+            {0x0F, 0xB6, 0xC0},                         // MOVZX EAX, AL
+            {0x66, 0x89, 0x08},                         // MOV [EAX], CX
+            {0xC3},                                     // RET
+    };
+
+    private MachineCodeInterpreter interpreter;
+
+    private List<ByteBuffer> machineCode;
+    private List<PEFile.Code.SectionTable> codeTables;
+
+    @Setup
+    public void setup() {
+        interpreter = InstructionTableSnapshot.createInterpreter("i386.pdf");
+
+        // Last instruction which doesn't fit is replaced by RETs, so every instruction can be rendered
+        byte[] code = new byte[SIZE];
+        Arrays.fill(code, (byte) 0xC3);
+        Random random = new Random(42);
+        int p = 0;
+        for (int[] encoding = ENCODINGS[random.nextInt(ENCODINGS.length)]; p + encoding.length <= SIZE; encoding = ENCODINGS[random.nextInt(ENCODINGS.length)]) {
+            for (int value : encoding) {
+                code[p++] = (byte) (value >= 0 ? value : random.nextInt(256));
+            }
+        }
+
+        PEFile peFile = new PEFile(code);
+        machineCode = peFile.getMachineCode();
+        codeTables = peFile.getCodeTables();
+    }
+
+    @Benchmark
+    public int scan() {
+        return interpreter.scan(machineCode.get(0), codeTables.get(0)).size();
+    }
+
+    @Benchmark
+    public int decode() {
+        return interpreter.decode(machineCode.get(0), codeTables.get(0), IMAGE_BASE).getInstructionCount();
+    }
+
+    @Benchmark
+    public int interpret() {
+        int total = 0;
+
+        for (InterpretedInstruction instruction : interpreter.interpret(machineCode, codeTables, IMAGE_BASE).get(0)) {
+            total += instruction.getOp1().length();
+        }
+
+        return total;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LinearSweepBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(options).run();
+    }
+}
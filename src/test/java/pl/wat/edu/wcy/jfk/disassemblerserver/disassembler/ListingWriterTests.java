@@ -0,0 +1,60 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Listing written through callbacks has one line per instruction, the same as instructions in decoded list.
+ */
+public class ListingWriterTests {
+    private static MachineCodeInterpreter interpreter;
+
+    @BeforeClass
+    public static void createInterpreter() {
+        interpreter = InstructionTableSnapshot.createInterpreter("i386.pdf");
+    }
+
+    @Test
+    public void linesFollowSectionsAndInstructions() {
+        PEFile peFile = new PEFile(ByteBuffer.wrap(MinimalPE.build()));
+        String[] lines = listing(peFile).split("\n", -1);
+
+        List<List<InterpretedInstruction>> sections = interpreter.interpret(peFile.getMachineCode(), peFile.getCodeTables(), peFile.getImageBase());
+        assertEquals(2 + sections.get(0).size() + sections.get(1).size() + 1, lines.length);
+
+        int line = 0;
+        assertEquals("; section .text at 00401000", lines[line++]);
+        assertEquals("00401000   55    PUSH EBP", lines[line]);
+        for (InterpretedInstruction instruction : sections.get(0)) {
+            assertEquals(instruction.toString(), lines[line++]);
+        }
+        assertEquals("; section CODE at 00402000", lines[line++]);
+        assertEquals("00402000   C3    RET ", lines[line]);
+        for (InterpretedInstruction instruction : sections.get(1)) {
+            assertEquals(instruction.toString(), lines[line++]);
+        }
+        assertEquals("", lines[line]);
+    }
+
+    @Test
+    public void unknownOpcodeIsWrittenAsComment() {
+        PEFile peFile = new PEFile(RecursiveTraversalTests.bytes(0x55, 0x0F, 0x04, 0x90));
+
+        assertEquals("; section .text at 00000000\n"
+                + "00000000   55    PUSH EBP\n"
+                + "; 00000001 Unknown opcode 0F 04\n"
+                + "00000002   0490    ADD AL, 90\n", listing(peFile));
+    }
+
+    private static String listing(PEFile peFile) {
+        StringWriter writer = new StringWriter();
+        interpreter.interpret(peFile.getMachineCode(), peFile.getCodeTables(), peFile.getImageBase(), new ListingWriter(writer));
+        return writer.toString();
+    }
+}
@@ -0,0 +1,99 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Small PE32 image with two code sections and a section importing KERNEL32.dll!ExitProcess and KERNEL32.dll!#5.
+ * Section with imports comes first in the file but last in the section table, and the file ends with overlay.
+ */
+public class MinimalPE {
+    public static final int IMAGE_BASE = 0x400000;
+    public static final int TEXT_RVA = 0x1000;
+    public static final int CODE_RVA = 0x2000;
+    public static final int IDATA_RVA = 0x3000;
+
+    // Import address table slots of ExitProcess and ordinal 5
+    public static final int EXIT_PROCESS_SLOT = IMAGE_BASE + IDATA_RVA + 0x60;
+    public static final int ORDINAL_SLOT = IMAGE_BASE + IDATA_RVA + 0x64;
+
+    public static final int SIZE = 0x800;
+
+    private static final int PE_HEADER = 0x40;
+    private static final int SECTION_TABLES = PE_HEADER + 0x18 + 0xE0;
+
+    private MinimalPE() {
+    }
+
+    public static byte[] build() {
+        ByteBuffer image = ByteBuffer.allocate(SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        image.putShort(0, (short) 0x5A4D);
+        image.putInt(0x3C, PE_HEADER);
+
+        image.putInt(PE_HEADER, 0x00004550);
+        image.putShort(PE_HEADER + 0x04, (short) 0x014C);
+        image.putShort(PE_HEADER + 0x06, (short) 3);
+        image.putShort(PE_HEADER + 0x14, (short) 0xE0);
+        image.putShort(PE_HEADER + 0x16, (short) 0x0102);
+
+        image.putShort(PE_HEADER + 0x18, (short) 0x10B);
+        image.putInt(PE_HEADER + 0x1C, 0x300);
+        image.putInt(PE_HEADER + 0x28, TEXT_RVA);
+        image.putInt(PE_HEADER + 0x34, IMAGE_BASE);
+        image.putInt(PE_HEADER + 0x38, 0x1000);
+        image.putInt(PE_HEADER + 0x3C, 0x200);
+        image.putInt(PE_HEADER + 0x74, 16);
+        image.putInt(PE_HEADER + 0x80, IDATA_RVA);
+        image.putInt(PE_HEADER + 0x84, 40);
+
+        section(image, 0, ".text", 0x1F0, TEXT_RVA, 0x200, 0x400, 0x60000020);
+        section(image, 1, "CODE", 0x100, CODE_RVA, 0x100, 0x600, 0x60000020);
+        section(image, 2, ".idata", 0xA0, IDATA_RVA, 0x200, 0x200, 0xC0000040);
+
+        // Import descriptor of KERNEL32.dll followed by zeroed one, lookup and address tables, names
+        int idata = 0x200;
+        image.putInt(idata, IDATA_RVA + 0x40);
+        image.putInt(idata + 12, IDATA_RVA + 0x80);
+        image.putInt(idata + 16, IDATA_RVA + 0x60);
+        for (int table : new int[]{0x40, 0x60}) {
+            image.putInt(idata + table, IDATA_RVA + 0x90);
+            image.putInt(idata + table + 4, 0x80000005);
+        }
+        put(image, idata + 0x80, "KERNEL32.dll");
+        put(image, idata + 0x92, "ExitProcess");
+
+        // PUSH EBP, MOV EBP, ESP, CALL [ExitProcess] and RET, rest of code sections is filled with NOPs
+        for (int p = 0x400; p < 0x700; ++p) {
+            image.put(p, (byte) 0x90);
+        }
+        image.put(0x400, (byte) 0x55).put(0x401, (byte) 0x8B).put(0x402, (byte) 0xEC);
+        image.put(0x403, (byte) 0xFF).put(0x404, (byte) 0x15).putInt(0x405, EXIT_PROCESS_SLOT);
+        image.put(0x600, (byte) 0xC3);
+
+        // Overlay after the last section
+        for (int p = 0x700; p < SIZE; ++p) {
+            image.put(p, (byte) p);
+        }
+
+        return image.array();
+    }
+
+    private static void section(ByteBuffer image, int index, String name, int virtualSize, int virtualAddress, int sizeOfRawData, int pointerToRawData, int characteristics) {
+        int table = SECTION_TABLES + index * 0x28;
+        put(image, table, name);
+        image.putInt(table + 0x08, virtualSize);
+        image.putInt(table + 0x0C, virtualAddress);
+        image.putInt(table + 0x10, sizeOfRawData);
+        image.putInt(table + 0x14, pointerToRawData);
+        image.putInt(table + 0x24, characteristics);
+    }
+
+    private static void put(ByteBuffer image, int offset, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < bytes.length; ++i) {
+            image.put(offset + i, bytes[i]);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Length of ModR/M operand (ModR/M, SIB and displacement bytes) computed with {@link ModRmTable}
+ * and with loops used by interpreter before.
+ * <p>
+ * Run with main method from test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModRmDecodeBenchmark {
+    private static final int SIZE = 1 << 16;
+
+    private byte[] code;
+
+    private ModRmTable modRmTable;
+    private List<Integer> slashRSize;
+
+    @Setup
+    public void setup() {
+        code = new byte[SIZE + 2];
+        new Random(42).nextBytes(code);
+
+        modRmTable = new ModRmTable();
+
+        slashRSize = new ArrayList<>();
+        for (int i = 0; i <= 0xFF; ++i) {
+            int size = 0;
+
+            for (int j = 0x05; j <= 0x3D; j += 8) {
+                if (i == j) {
+                    size += 4;
+                }
+            }
+
+            for (int j = 0x04; j <= 0x3C; j += 8) {
+                if (i == j) {
+                    size += 1;
+                }
+            }
+
+            for (int j = 0x44; j <= 0x7C; j += 8) {
+                if (i == j) {
+                    size += 1;
+                }
+            }
+
+            for (int j = 0x84; j <= 0xBC; j += 8) {
+                if (i == j) {
+                    size += 1;
+                }
+            }
+
+            if (i >= 0x40 && i <= 0x7F) {
+                size += 1;
+            }
+            if (i >= 0x80 && i <= 0xBF) {
+                size += 4;
+            }
+
+            slashRSize.add(size);
+        }
+    }
+
+    @Benchmark
+    public int loops() {
+        int total = 0;
+
+        for (int p = 0; p < SIZE; ++p) {
+            int b2 = code[p] & 0xFF;
+            int length = slashRSize.get(b2);
+
+            boolean sibByte = false;
+            for (int j = 0x04; j <= 0x3C; j += 8) {
+                if (b2 == j) {
+                    sibByte = true;
+                }
+            }
+
+            if (sibByte) {
+                int b3 = code[p + 1] & 0xFF;
+                for (int j = 0x05; j <= 0xFD; j += 8) {
+                    if (b3 == j) {
+                        length += 4;
+                    }
+                }
+            }
+
+            total += length;
+        }
+
+        return total;
+    }
+
+    @Benchmark
+    public int table() {
+        int total = 0;
+
+        for (int p = 0; p < SIZE; ++p) {
+            int b2 = code[p] & 0xFF;
+            int length = modRmTable.getLength(b2);
+
+            if (modRmTable.hasSibDisplacement(b2) && modRmTable.hasDisp32Base(code[p + 1] & 0xFF)) {
+                length += 4;
+            }
+
+            total += length;
+        }
+
+        return total;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ModRmDecodeBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(options).run();
+    }
+}
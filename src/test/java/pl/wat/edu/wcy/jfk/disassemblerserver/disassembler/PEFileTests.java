@@ -0,0 +1,101 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * File read as a stream of headers and sections is parsed the same as mapped file and file in memory.
+ */
+public class PEFileTests {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void streamedAndMappedFilesHaveEqualSections() throws IOException {
+        byte[] image = MinimalPE.build();
+
+        PEFile streamed = new PEFile(new ByteArrayInputStream(image));
+        PEFile mapped = new PEFile(new FileInputStream(write(image)));
+        PEFile inMemory = new PEFile(ByteBuffer.wrap(image));
+
+        for (PEFile peFile : Arrays.asList(streamed, mapped, inMemory)) {
+            assertTrue(peFile.isPE());
+            assertEquals(MinimalPE.IMAGE_BASE, peFile.getImageBase());
+            assertEquals(MinimalPE.IMAGE_BASE + MinimalPE.TEXT_RVA, peFile.getAddressOfEntryPoint());
+            assertEquals(3, peFile.getSectionTables().size());
+            assertEquals(2, peFile.getCodeTables().size());
+        }
+
+        for (PEFile peFile : Arrays.asList(mapped, inMemory)) {
+            assertEqualTables(streamed.getSectionTables(), peFile.getSectionTables());
+            assertEqualTables(streamed.getCodeTables(), peFile.getCodeTables());
+            assertEquals(streamed.getMachineCode(), peFile.getMachineCode());
+            assertEquals(streamed.getImportTable().getSymbol(MinimalPE.EXIT_PROCESS_SLOT), peFile.getImportTable().getSymbol(MinimalPE.EXIT_PROCESS_SLOT));
+        }
+
+        assertEquals(ByteBuffer.wrap(image, 0x400, 0x200), streamed.getMachineCode().get(0));
+        assertEquals(ByteBuffer.wrap(image, 0x600, 0x100), streamed.getMachineCode().get(1));
+    }
+
+    @Test
+    public void codeSectionOutsideOfFileIsRejectedByBothReaders() throws IOException {
+        byte[] image = Arrays.copyOf(MinimalPE.build(), 0x500);
+
+        try {
+            new PEFile(new ByteArrayInputStream(image));
+            fail("Streamed file with truncated code section was parsed");
+        } catch (IndexOutOfBoundsException e) {
+            assertEquals("Section .text lies outside of the file", e.getMessage());
+        }
+
+        try {
+            new PEFile(new FileInputStream(write(image)));
+            fail("Mapped file with truncated code section was parsed");
+        } catch (IndexOutOfBoundsException e) {
+            assertEquals("Section .text lies outside of the file", e.getMessage());
+        }
+    }
+
+    @Test
+    public void fileWithoutPeSignatureIsNotPe() throws IOException {
+        byte[] image = MinimalPE.build();
+        image[0x40] = 'N';
+
+        assertFalse(new PEFile(new ByteArrayInputStream(image)).isPE());
+        assertFalse(new PEFile(new FileInputStream(write(image))).isPE());
+    }
+
+    private File write(byte[] image) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), image);
+        return file;
+    }
+
+    private static void assertEqualTables(List<PEFile.Code.SectionTable> expected, List<PEFile.Code.SectionTable> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            assertArrayEquals(expected.get(i).getName(), actual.get(i).getName());
+            assertEquals(expected.get(i).getMisc(), actual.get(i).getMisc());
+            assertEquals(expected.get(i).getVirtualAdress(), actual.get(i).getVirtualAdress());
+            assertEquals(expected.get(i).getSizeOfRawData(), actual.get(i).getSizeOfRawData());
+            assertEquals(expected.get(i).getPointerToRawData(), actual.get(i).getPointerToRawData());
+            assertEquals(expected.get(i).getCharacteristics(), actual.get(i).getCharacteristics());
+        }
+    }
+}
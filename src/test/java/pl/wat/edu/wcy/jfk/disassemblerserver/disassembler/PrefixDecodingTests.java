@@ -0,0 +1,71 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Legacy prefixes consumed before opcode lookup, and opcode bytes of two-byte instructions read after them.
+ */
+public class PrefixDecodingTests {
+    private static MachineCodeInterpreter interpreter;
+
+    @BeforeClass
+    public static void createInterpreter() {
+        interpreter = InstructionTableSnapshot.createInterpreter("i386.pdf");
+    }
+
+    @Test
+    public void f2BeforeCmpsAndScasIsLookedUpWithOpcode() {
+        assertInstruction("REPNECMPS", 2, 0xF2, 0xA6);
+        assertInstruction("REPNECMPS", 2, 0xF2, 0xA7);
+        assertInstruction("REPNECMPS", 2, 0xF2, 0xAE);
+        assertInstruction("REPNECMPS", 2, 0xF2, 0xAF);
+    }
+
+    @Test
+    public void f2BeforeOtherOpcodesIsPrefix() {
+        assertInstruction("BND  MOVS", 2, 0xF2, 0xA4);
+        assertInstruction("REP  CMPS", 2, 0xF3, 0xA6);
+        assertInstruction("data16  REPNECMPS", 3, 0x66, 0xF2, 0xAF);
+    }
+
+    @Test
+    public void laterPrefixOfGroupReplacesEarlierOne() {
+        assertInstruction("data16  CMPS", 3, 0xF2, 0x66, 0xA7);
+        assertInstruction("GS MOV", 4, 0x26, 0x65, 0x8B, 0x00);
+    }
+
+    @Test
+    public void twoByteOpcodeIsReadAfterPrefixes() {
+        assertInstruction("PAND", 3, 0x0F, 0xDB, 0xC1);
+        assertInstruction("data16 GS PAND", 5, 0x65, 0x66, 0x0F, 0xDB, 0xC1);
+        assertInstruction("data16  MOVZX", 4, 0x66, 0x0F, 0xB6, 0xC0);
+        assertInstruction("DS JE", 7, 0x3E, 0x0F, 0x84, 0x00, 0x00, 0x00, 0x00);
+    }
+
+    @Test
+    public void extensionOf0F01IsReadAfterPrefixes() {
+        assertInstruction("XGETBV", 3, 0x0F, 0x01, 0xD0);
+        assertInstruction("data16  XGETBV", 4, 0x66, 0x0F, 0x01, 0xD0);
+        assertInstruction("LOCK  SGDT", 4, 0xF0, 0x0F, 0x01, 0x10);
+    }
+
+    // First instruction decoded from bytes, mnemonic with its prefixes
+    private static void assertInstruction(String mnemo, int length, int... bytes) {
+        byte[] code = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; ++i) {
+            code[i] = (byte) bytes[i];
+        }
+
+        PEFile peFile = new PEFile(code);
+        ByteBuffer machineCode = peFile.getMachineCode().get(0);
+        DecodedSection section = interpreter.decode(machineCode, peFile.getCodeTables().get(0), 0);
+
+        assertEquals(mnemo, section.get(0).getMnemo().trim());
+        assertEquals(length, section.getLength(0));
+    }
+}
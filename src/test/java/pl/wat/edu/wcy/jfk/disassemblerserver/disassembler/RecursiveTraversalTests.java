@@ -0,0 +1,98 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RecursiveTraversalTests {
+    private static final int IMAGE_BASE = 0x400000;
+
+    // Bytes at 0E, 0F and 13 are never reached
+    static final byte[] CODE = bytes(
+            0xE8, 0x0B, 0x00, 0x00, 0x00,           // 00 CALL 10
+            0x74, 0x06,                             // 05 JE 0D
+            0xFF, 0x25, 0x00, 0x10, 0x40, 0x00,     // 07 JMP [00401000]
+            0xC3,                                   // 0D RET
+            0xCC, 0xCC,
+            0x55,                                   // 10 PUSH EBP
+            0xEB, 0x01,                             // 11 JMP 14
+            0xCC,
+            0xC3);                                  // 14 RET
+
+    private static MachineCodeInterpreter interpreter;
+
+    @BeforeClass
+    public static void createInterpreter() {
+        interpreter = InstructionTableSnapshot.createInterpreter("i386.pdf");
+    }
+
+    @Test
+    public void onlyReachableInstructionsAreDecoded() {
+        assertArrayEquals(new int[]{0x00, 0x05, 0x07, 0x0D, 0x10, 0x11, 0x14}, offsets(traverse(true, null, 1)));
+        assertArrayEquals(new int[]{0x00, 0x05, 0x07, 0x0D, 0x10, 0x11, 0x14}, offsets(traverse(true, ForkJoinPool.commonPool(), 4)));
+    }
+
+    @Test
+    public void callsAreNotFollowedWhenDisabled() {
+        assertArrayEquals(new int[]{0x00, 0x05, 0x07, 0x0D}, offsets(traverse(false, null, 1)));
+    }
+
+    @Test
+    public void flowIsClassifiedByOpcode() {
+        DecodedSection section = traverse(true, null, 1);
+
+        assertEquals(OpcodeTable.FLOW_CALL, section.getFlow(0));
+        assertEquals(OpcodeTable.FLOW_BRANCH, section.getFlow(1));
+        assertEquals(OpcodeTable.FLOW_RETURN, section.getFlow(3));
+        assertEquals(OpcodeTable.FLOW_NONE, section.getFlow(4));
+        assertEquals(OpcodeTable.FLOW_JUMP, section.getFlow(5));
+        assertEquals(IMAGE_BASE + 0x14, section.getBranchTarget(5));
+
+        // Indirect jump ends the path without target
+        assertEquals(OpcodeTable.FLOW_JUMP, section.getFlow(2));
+        assertEquals(MachineCodeInterpreter.NO_TARGET, section.getBranchTarget(2));
+    }
+
+    @Test
+    public void farAndAliasedJumpsAreClassifiedByOpcode() {
+        PEFile peFile = new PEFile(bytes(0xEA, 0x00, 0x10, 0x40, 0x00, 0x08, 0x00, 0x72, 0xFE, 0xFF, 0xE0));
+        DecodedSection section = interpreter.decode(peFile.getMachineCode().get(0), peFile.getCodeTables().get(0), IMAGE_BASE);
+
+        assertEquals(OpcodeTable.FLOW_JUMP, section.getFlow(0));
+        assertEquals(MachineCodeInterpreter.NO_TARGET, section.getBranchTarget(0));
+        assertEquals(OpcodeTable.FLOW_BRANCH, section.getFlow(1));
+        assertEquals(IMAGE_BASE + 7, section.getBranchTarget(1));
+        assertEquals(OpcodeTable.FLOW_JUMP, section.getFlow(2));
+        assertEquals(MachineCodeInterpreter.NO_TARGET, section.getBranchTarget(2));
+    }
+
+    private static DecodedSection traverse(boolean followCalls, ForkJoinPool pool, int parallelism) {
+        PEFile peFile = new PEFile(CODE);
+        RecursiveTraversal recursiveTraversal = new RecursiveTraversal(interpreter, peFile.getMachineCode(), peFile.getCodeTables(), IMAGE_BASE, followCalls);
+
+        List<DecodedSection> sections = recursiveTraversal.traverse(new int[]{IMAGE_BASE}, pool, parallelism);
+        assertEquals(1, sections.size());
+        return sections.get(0);
+    }
+
+    private static int[] offsets(DecodedSection section) {
+        int[] offsets = new int[section.getInstructionCount()];
+        for (int i = 0; i < offsets.length; ++i) {
+            offsets[i] = section.getAddress(i) - IMAGE_BASE;
+        }
+        return offsets;
+    }
+
+    static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
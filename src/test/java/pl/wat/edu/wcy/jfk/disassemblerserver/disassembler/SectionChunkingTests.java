@@ -0,0 +1,93 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Section decoded in chunks gives the same instructions as sequential linear sweep.
+ */
+public class SectionChunkingTests {
+    private static final int IMAGE_BASE = 0x400000;
+
+    // Instructions of different lengths, so chunks start inside instructions
+    private static final int[][] ENCODINGS = {
+            {0x55},
+            {0x8B, 0x45, 0x08},
+            {0x89, 0x84, 0x8E, 0x10, 0x20, 0x30, 0x40},
+            {0xE8, 0xF0, 0xFF, 0xFF, 0xFF},
+            {0x0F, 0x85, 0x00, 0x01, 0x00, 0x00},
+            {0x66, 0xB8, 0x34, 0x12},
+            {0x75, 0xF0},
+            {0xC3},
+    };
+
+    private static MachineCodeInterpreter interpreter;
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void createInterpreter() {
+        interpreter = InstructionTableSnapshot.createInterpreter("i386.pdf");
+
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void chunkedDecodeEqualsSequentialSweep() {
+        for (int seed = 0; seed < 4; ++seed) {
+            // Sizes around multiples of the minimal chunk
+            byte[] code = code(new Random(seed), 3 * 64 * 1024 + 1000 * seed);
+            assertSameInstructions(code, 2);
+            assertSameInstructions(code, 8);
+        }
+    }
+
+    @Test
+    public void sectionTooShortToSplitIsDecodedSequentially() {
+        assertSameInstructions(code(new Random(7), 64 * 1024 + 100), 8);
+    }
+
+    private static void assertSameInstructions(byte[] code, int maxChunks) {
+        PEFile peFile = new PEFile(code);
+        ByteBuffer machineCode = peFile.getMachineCode().get(0);
+        PEFile.Code.SectionTable codeTable = peFile.getCodeTables().get(0);
+
+        DecodedSection sequential = interpreter.decode(machineCode, codeTable, IMAGE_BASE);
+        DecodedSection chunked = interpreter.decode(machineCode, codeTable, IMAGE_BASE, pool, maxChunks);
+
+        assertEquals(sequential.getInstructionCount(), chunked.getInstructionCount());
+        for (int i = 0; i < sequential.getInstructionCount(); ++i) {
+            assertEquals(sequential.getAddress(i), chunked.getAddress(i));
+            assertEquals(sequential.getLength(i), chunked.getLength(i));
+            assertEquals(sequential.getPattern(i), chunked.getPattern(i));
+        }
+        assertEquals(sequential.get(sequential.size() - 1).toString(), chunked.get(chunked.size() - 1).toString());
+    }
+
+    // Random sequence of encodings, padded with RETs so the last instruction isn't cut
+    private static byte[] code(Random random, int size) {
+        byte[] code = new byte[size];
+        int p = 0;
+        for (int[] encoding = ENCODINGS[random.nextInt(ENCODINGS.length)]; p + encoding.length <= size; encoding = ENCODINGS[random.nextInt(ENCODINGS.length)]) {
+            for (int value : encoding) {
+                code[p++] = (byte) value;
+            }
+        }
+        while (p < size) {
+            code[p++] = (byte) 0xC3;
+        }
+
+        return code;
+    }
+}
@@ -0,0 +1,108 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class SignatureScannerTests {
+    private static final int IMAGE_BASE = 0x400000;
+
+    @Test
+    public void wildcardMatchesAnyByte() {
+        byte[] code = bytes(0x90, 0x55, 0x8B, 0xEC, 0x12, 0x83, 0x55, 0x8B, 0xEC, 0xFF, 0x83, 0x55, 0x8B, 0xEC, 0x12, 0x84);
+
+        List<SignatureScanner.Match> matches = scan(Collections.singletonList("55 8B EC ?? 83"), code, 100);
+
+        assertEquals(2, matches.size());
+        assertMatch(matches.get(0), 0, IMAGE_BASE + 1);
+        assertMatch(matches.get(1), 0, IMAGE_BASE + 6);
+    }
+
+    @Test
+    public void overlappingMatchesAreAllFound() {
+        List<SignatureScanner.Match> matches = scan(Collections.singletonList("aa ?? AA"), bytes(0xAA, 0xAA, 0xAA, 0xAA), 100);
+
+        assertEquals(2, matches.size());
+        assertMatch(matches.get(0), 0, IMAGE_BASE);
+        assertMatch(matches.get(1), 0, IMAGE_BASE + 1);
+    }
+
+    @Test
+    public void signaturesPackedIntoWordsMatch() {
+        // First two signatures fill the first word up to its top bit, third one starts the second word
+        Random random = new Random(1);
+        byte[] first = randomBytes(random, 30);
+        byte[] second = randomBytes(random, 34);
+        byte[] third = randomBytes(random, 5);
+        second[10] = 0x00;
+
+        byte[] code = new byte[200];
+        System.arraycopy(third, 0, code, 3, third.length);
+        System.arraycopy(second, 0, code, 20, second.length);
+        System.arraycopy(first, 0, code, 100, first.length);
+        code[30] = 0x7F;
+
+        String secondSignature = hex(second).replace(" 00 ", " ?? ");
+        List<SignatureScanner.Match> matches = scan(Arrays.asList(hex(first), secondSignature, hex(third)), code, 100);
+
+        assertEquals(3, matches.size());
+        assertMatch(matches.get(0), 2, IMAGE_BASE + 3);
+        assertMatch(matches.get(1), 1, IMAGE_BASE + 20);
+        assertMatch(matches.get(2), 0, IMAGE_BASE + 100);
+    }
+
+    @Test
+    public void scanningStopsAtMaxMatches() {
+        assertEquals(3, scan(Collections.singletonList("??"), new byte[10], 3).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void signatureLongerThanWordIsRejected() {
+        SignatureScanner.compile(Collections.singletonList(hex(new byte[65])));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void signatureWithInvalidByteIsRejected() {
+        SignatureScanner.compile(Collections.singletonList("55 8G"));
+    }
+
+    private static List<SignatureScanner.Match> scan(List<String> signatures, byte[] code, int maxMatches) {
+        PEFile peFile = new PEFile(code);
+        return SignatureScanner.compile(signatures).scan(peFile.getMachineCode(), peFile.getCodeTables(), IMAGE_BASE, maxMatches);
+    }
+
+    private static void assertMatch(SignatureScanner.Match match, int signature, int address) {
+        assertEquals(signature, match.getSignature());
+        assertEquals(address, match.getAddress());
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    // Bytes from 0x80 up, so signatures don't match zeros around them
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            bytes[i] = (byte) (0x80 | random.nextInt(0x80));
+        }
+        return bytes;
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder output = new StringBuilder();
+        for (byte b : bytes) {
+            HexFormatter.appendByte(output.append(' '), b);
+        }
+        return output.toString().trim();
+    }
+}
@@ -0,0 +1,60 @@
+package pl.wat.edu.wcy.jfk.disassemblerserver.disassembler;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Last instruction cut off by the end of section is rendered with operand placeholders instead of throwing.
+ */
+public class TruncatedInstructionTests {
+    private static MachineCodeInterpreter interpreter;
+
+    @BeforeClass
+    public static void createInterpreter() {
+        interpreter = InstructionTableSnapshot.createInterpreter("i386.pdf");
+    }
+
+    @Test
+    public void cutOffImmediatesAndRelativesKeepPlaceholders() {
+        assertLast("CALL rel32", 0xE8, 0x00, 0x00);
+        assertLast("JZ rel8", 0x74);
+        assertLast("MOV EAX, imm32", 0xB8, 0x34, 0x12);
+        assertLast("MOV EAX, moffs32", 0xA1, 0x00, 0x10);
+        assertLast("MOV 00401000, imm32", 0xC7, 0x05, 0x00, 0x10, 0x40, 0x00, 0x01);
+        assertLast("RET imm16", 0xC2, 0x34);
+    }
+
+    @Test
+    public void cutOffAddressesKeepPlaceholders() {
+        assertLast("MOV EAX, r/m32", 0x8B, 0x04);
+        assertLast("MOV EAX, r/m32", 0x8B, 0x44);
+        assertLast("MOV EAX, r/m32", 0x8B, 0x05, 0x00);
+        assertLast("MOV EAX, r/m32", 0x8B, 0x80, 0x00, 0x10);
+        assertLast("MOV EAX, r/m32", 0x8B, 0x84, 0x24, 0x00);
+        assertLast("MOV EAX, r/m32", 0x8B, 0x04, 0x25, 0x00);
+    }
+
+    // Instruction after a NOP, checked as "mnemonic operands" without opcode column
+    private static void assertLast(String expected, int... values) {
+        byte[] code = new byte[values.length + 1];
+        code[0] = (byte) 0x90;
+        for (int i = 0; i < values.length; ++i) {
+            code[i + 1] = (byte) values[i];
+        }
+
+        PEFile peFile = new PEFile(code);
+        DecodedSection section = interpreter.decode(peFile.getMachineCode().get(0), peFile.getCodeTables().get(0), 0);
+        InterpretedInstruction instruction = section.get(section.size() - 1);
+
+        StringBuilder text = new StringBuilder(instruction.getMnemo().trim());
+        for (String operand : new String[]{instruction.getOp1(), instruction.getOp2(), instruction.getOp3()}) {
+            if (operand != null && !operand.isEmpty()) {
+                text.append(text.indexOf(" ") < 0 ? " " : ", ").append(operand);
+            }
+        }
+        assertEquals(2, section.size());
+        assertEquals(expected, text.toString());
+    }
+}